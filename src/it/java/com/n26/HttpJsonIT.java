@@ -6,7 +6,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
-import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.Stopwatch;
@@ -16,16 +15,16 @@ import org.junit.runner.RunWith;
 import org.junit.runners.model.Statement;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
-import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.junit4.SpringRunner;
-import org.springframework.test.context.web.WebAppConfiguration;
-import org.springframework.test.web.servlet.MockMvc;
-import org.springframework.test.web.servlet.ResultActions;
-import org.springframework.web.context.support.GenericWebApplicationContext;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -51,15 +50,9 @@ import java.util.stream.Stream;
 import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
-import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
-import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
-import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
-import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
-import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
 @RunWith(SpringRunner.class)
-@SpringBootTest(classes = Application.class)
-@WebAppConfiguration
+@SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 public class HttpJsonIT {
 
     private static final String TIMESTAMP_OFFSET_PROPERTY = "_timestampOffset";
@@ -75,16 +68,9 @@ public class HttpJsonIT {
 
     private static HttpMessageConverter mappingJackson2HttpMessageConverter;
 
+    //Requests go over HTTP to the embedded server, so the same cases run against the servlet and the reactive stack
     @Autowired
-    private GenericWebApplicationContext webApplicationContext;
-
-    private MockMvc mockMvc;
-
-    @Before
-    public void getContext() {
-        mockMvc = webAppContextSetup(webApplicationContext).build();
-        assertNotNull(mockMvc);
-    }
+    private TestRestTemplate restTemplate;
 
     @Autowired
     public void setConverters(HttpMessageConverter<?>[] converters) {
@@ -226,14 +212,10 @@ public class HttpJsonIT {
 
                 if (!contentType.equals(MediaType.ALL)) {
                     try {
-                        ResultActions resultActions = mockMvc.perform(post(url)
-                                .content(body)
-                                .contentType(CONTENT_TYPE_JSON));
-                        MockHttpServletResponse mockResponse = resultActions.andReturn()
-                                .getResponse();
+                        ResponseEntity<String> httpResponse = exchange(HttpMethod.POST, url, body);
 
                         validateStatusCode(filename, method + " " + url,
-                                statusCode, String.valueOf(mockResponse.getStatus()));
+                                statusCode, String.valueOf(httpResponse.getStatusCodeValue()));
                     } catch (Exception ex) {
                         throw new Error(ex);
                     }
@@ -253,14 +235,10 @@ public class HttpJsonIT {
 
                 if (!contentType.equals(MediaType.ALL)) {
                     try {
-                        ResultActions resultActions = mockMvc.perform(put(url)
-                                .content(body)
-                                .contentType(CONTENT_TYPE_JSON));
-                        MockHttpServletResponse mockResponse = resultActions.andReturn()
-                                .getResponse();
+                        ResponseEntity<String> httpResponse = exchange(HttpMethod.PUT, url, body);
 
                         validateStatusCode(filename, method + " " + url,
-                                statusCode, String.valueOf(mockResponse.getStatus()));
+                                statusCode, String.valueOf(httpResponse.getStatusCodeValue()));
                     } catch (Exception ex) {
                         throw new Error(ex);
                     }
@@ -270,12 +248,10 @@ public class HttpJsonIT {
             }
             case "DELETE":
                 try {
-                    ResultActions resultActions = mockMvc.perform(delete(url));
-                    MockHttpServletResponse mockResponse = resultActions.andReturn()
-                            .getResponse();
+                    ResponseEntity<String> httpResponse = exchange(HttpMethod.DELETE, url, null);
 
                     validateStatusCode(filename, method + " " + url,
-                            statusCode, String.valueOf(mockResponse.getStatus()));
+                            statusCode, String.valueOf(httpResponse.getStatusCodeValue()));
                 } catch (Exception ex) {
                     throw new Error(ex);
                 }
@@ -283,21 +259,19 @@ public class HttpJsonIT {
                 break;
             case "GET":
                 try {
-                    ResultActions resultActions = mockMvc.perform(get(url));
-                    MockHttpServletResponse mockResponse = resultActions.andReturn()
-                            .getResponse();
+                    ResponseEntity<String> httpResponse = exchange(HttpMethod.GET, url, null);
 
                     if (validateStatusCode(filename, method + " " + url,
-                            statusCode, String.valueOf(mockResponse.getStatus()))) {
+                            statusCode, String.valueOf(httpResponse.getStatusCodeValue()))) {
                         JsonNode expectedType = response.get("headers").get("Content-Type");
                         if (expectedType != null) {
-                            if (mockResponse.containsHeader("content-type")) {
+                            if (httpResponse.getHeaders().getContentType() != null) {
                                 validateContentType(filename, method + " " + url,
-                                        expectedType.asText(), mockResponse.getContentType());
+                                        expectedType.asText(), httpResponse.getHeaders().getContentType().toString());
                             }
 
                             if (statusCode.equals("200")) {
-                                String responseBody = mockResponse.getContentAsString();
+                                String responseBody = httpResponse.getBody();
                                 JsonNode expectedResponseBodyJson = response.get("body");
 
                                 if (expectedType.asText().equals("application/json")) {
@@ -323,6 +297,19 @@ public class HttpJsonIT {
         }
     }
 
+    //Each stack writes its own report, so a later run does not overwrite the result of an earlier one
+    protected String reportName() {
+        return "result";
+    }
+
+    private ResponseEntity<String> exchange(HttpMethod method, String url, String body) {
+        HttpHeaders headers = new HttpHeaders();
+        if (body != null) {
+            headers.setContentType(CONTENT_TYPE_JSON);
+        }
+        return restTemplate.exchange(url, method, new HttpEntity<>(body, headers), String.class);
+    }
+
     private JsonNode parseJson(String jsonString) {
         try {
             return OBJECT_MAPPER.readTree(jsonString);
@@ -509,7 +496,7 @@ public class HttpJsonIT {
         File reportFolder = new File("target/customReports");
         reportFolder.mkdir();
 
-        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get("target/customReports/result.txt"))) {
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get("target/customReports/" + reportName() + ".txt"))) {
             writer.write(Colors.WHITE_BOLD +
                     " _    _       _ _     _______        _     _____                       _   \n" +
                     "| |  | |     (_) |   |__   __|      | |   |  __ \\                     | |  \n" +
@@ -606,7 +593,7 @@ public class HttpJsonIT {
             throw new Error(ex);
         }
 
-        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get("target/customReports/result.xml"))) {
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get("target/customReports/" + reportName() + ".xml"))) {
             writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
             writer.write(String.format("<testsuite name=\"%s\" time=\"%f\" tests=\"%d\" errors=\"0\" skipped=\"0\" " +
                             "failures=\"%d\">\n",
@@ -665,7 +652,7 @@ public class HttpJsonIT {
         File reportFolder = new File("target/customReports");
         reportFolder.mkdir();
 
-        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get("target/customReports/result.txt"))) {
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get("target/customReports/" + reportName() + ".txt"))) {
             writer.write(Colors.WHITE_BOLD +
                     " _    _       _ _     _______        _     _____                       _   \n" +
                     "| |  | |     (_) |   |__   __|      | |   |  __ \\                     | |  \n" +
@@ -706,7 +693,7 @@ public class HttpJsonIT {
             throw new Error(ex);
         }
 
-        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get("target/customReports/result.xml"))) {
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get("target/customReports/" + reportName() + ".xml"))) {
             writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
             writer.write(String.format("<testsuite name=\"%s\" time=\"%f\" tests=\"%d\" errors=\"0\" skipped=\"0\" " +
                             "failures=\"%d\">\n",
@@ -0,0 +1,20 @@
+package com.n26;
+
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * Runs the HttpJsonIT test cases against the WebFlux controller on Netty.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("reactive")
+public class ReactiveHttpJsonIT extends HttpJsonIT {
+
+    @Override
+    protected String reportName() {
+        return "reactive-result";
+    }
+}
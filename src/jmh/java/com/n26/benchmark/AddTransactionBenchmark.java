@@ -0,0 +1,77 @@
+package com.n26.benchmark;
+
+import com.n26.dto.TransactionDto;
+import com.n26.service.TransactionServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * addTransaction throughput from 1 to 64 threads writing into one shared service.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AddTransactionBenchmark {
+    private TransactionServiceImpl transactionService;
+    private TransactionDto[] transactions;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        transactionService = new TransactionServiceImpl();
+        transactionService.init();
+    }
+
+    @Setup(Level.Iteration)
+    public void refreshTransactions() {
+        transactions = BenchmarkTransactions.generate();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean addTransaction_1thread(Cursor cursor) {
+        return add(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean addTransaction_4threads(Cursor cursor) {
+        return add(cursor);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean addTransaction_16threads(Cursor cursor) {
+        return add(cursor);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean addTransaction_64threads(Cursor cursor) {
+        return add(cursor);
+    }
+
+    private boolean add(Cursor cursor) {
+        TransactionDto transaction = transactions[cursor.next++ & (BenchmarkTransactions.SIZE - 1)];
+        return transactionService.addTransaction(transaction);
+    }
+}
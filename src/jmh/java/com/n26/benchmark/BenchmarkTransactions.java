@@ -0,0 +1,31 @@
+package com.n26.benchmark;
+
+import com.n26.dto.TransactionDto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Pregenerated transactions, so benchmarks measure the service rather than building DTOs.
+ * Timestamps are spread over the last 30 seconds and must be regenerated every iteration
+ * to stay inside the 60 second window.
+ */
+final class BenchmarkTransactions {
+    static final int SIZE = 4096;
+
+    private BenchmarkTransactions() {
+    }
+
+    static TransactionDto[] generate() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDateTime now = LocalDateTime.now();
+        TransactionDto[] transactions = new TransactionDto[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            transactions[i] = new TransactionDto(
+                    BigDecimal.valueOf(random.nextLong(1, 1_000_000), 2),
+                    now.minusNanos(random.nextLong(30_000) * 1_000_000));
+        }
+        return transactions;
+    }
+}
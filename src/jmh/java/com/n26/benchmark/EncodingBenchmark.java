@@ -0,0 +1,87 @@
+package com.n26.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.n26.config.JacksonObjectMapperConfiguration;
+import com.n26.dto.StatisticsDto;
+import com.n26.dto.TransactionDto;
+import com.n26.model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a transaction and encoding the statistics in each encoding the API negotiates,
+ * with mappers configured like the application's.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EncodingBenchmark {
+    @Param({"json", "cbor", "smile"})
+    private String encoding;
+
+    private ObjectReader transactionReader;
+    private ObjectWriter statisticsWriter;
+    private byte[][] transactions;
+    private StatisticsDto statistics;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = JacksonObjectMapperConfiguration.configure(new ObjectMapper(factory(encoding)));
+        transactionReader = objectMapper.readerFor(Transaction.class);
+        statisticsWriter = objectMapper.writerFor(StatisticsDto.class);
+
+        //Timestamps only need to parse, the transactions are never added to a window
+        TransactionDto[] dtos = BenchmarkTransactions.generate();
+        transactions = new byte[dtos.length][];
+        for (int i = 0; i < dtos.length; i++) {
+            transactions[i] = objectMapper.writeValueAsBytes(objectMapper.createObjectNode()
+                    .put("amount", dtos[i].getAmount().toPlainString())
+                    .put("timestamp", dtos[i].getTimestamp() + "Z"));
+        }
+        statistics = new StatisticsDto(new BigDecimal("1234567.89"), new BigDecimal("4115.23"),
+                new BigDecimal("9999.99"), new BigDecimal("0.01"), 300);
+    }
+
+    private static JsonFactory factory(String encoding) {
+        switch (encoding) {
+            case "cbor":
+                return new CBORFactory();
+            case "smile":
+                return new SmileFactory();
+            default:
+                return new JsonFactory();
+        }
+    }
+
+    @Benchmark
+    public Transaction readTransaction() throws IOException {
+        return transactionReader.readValue(transactions[next++ & (BenchmarkTransactions.SIZE - 1)]);
+    }
+
+    @Benchmark
+    public byte[] writeStatistics() throws IOException {
+        return statisticsWriter.writeValueAsBytes(statistics);
+    }
+}
@@ -0,0 +1,97 @@
+package com.n26.benchmark;
+
+import com.n26.dto.StatisticsDto;
+import com.n26.dto.TransactionDto;
+import com.n26.service.TransactionServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Readers polling getStatistics while writers call addTransaction, at 7:1, 4:4 and 1:7 read/write ratios.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Group)
+public class MixedReadWriteBenchmark {
+    private TransactionServiceImpl transactionService;
+    private TransactionDto[] transactions;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        transactionService = new TransactionServiceImpl();
+        transactionService.init();
+    }
+
+    @Setup(Level.Iteration)
+    public void refreshTransactions() {
+        transactions = BenchmarkTransactions.generate();
+    }
+
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(7)
+    public StatisticsDto readHeavy_read() {
+        return transactionService.getStatistics();
+    }
+
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(1)
+    public boolean readHeavy_write(Cursor cursor) {
+        return add(cursor);
+    }
+
+    @Benchmark
+    @Group("balanced")
+    @GroupThreads(4)
+    public StatisticsDto balanced_read() {
+        return transactionService.getStatistics();
+    }
+
+    @Benchmark
+    @Group("balanced")
+    @GroupThreads(4)
+    public boolean balanced_write(Cursor cursor) {
+        return add(cursor);
+    }
+
+    @Benchmark
+    @Group("writeHeavy")
+    @GroupThreads(1)
+    public StatisticsDto writeHeavy_read() {
+        return transactionService.getStatistics();
+    }
+
+    @Benchmark
+    @Group("writeHeavy")
+    @GroupThreads(7)
+    public boolean writeHeavy_write(Cursor cursor) {
+        return add(cursor);
+    }
+
+    private boolean add(Cursor cursor) {
+        TransactionDto transaction = transactions[cursor.next++ & (BenchmarkTransactions.SIZE - 1)];
+        return transactionService.addTransaction(transaction);
+    }
+}
@@ -0,0 +1,62 @@
+package com.n26.benchmark;
+
+import com.n26.dto.StatisticsDto;
+import com.n26.dto.TransactionDto;
+import com.n26.service.TransactionServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * getStatistics latency for a growing number of transactions in the window, for the interval and for an hour.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatisticsBenchmark {
+    @Param({"0", "1000", "100000", "1000000"})
+    private int storeSize;
+
+    private TransactionServiceImpl transactionService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        transactionService = new TransactionServiceImpl();
+        transactionService.init();
+    }
+
+    //Refilled every iteration so the store does not drain as timestamps age out of the window
+    @Setup(Level.Iteration)
+    public void fillStore() {
+        transactionService.deleteAllTransactions();
+        TransactionDto[] transactions = BenchmarkTransactions.generate();
+        for (int i = 0; i < storeSize; i++) {
+            transactionService.addTransaction(transactions[i & (BenchmarkTransactions.SIZE - 1)]);
+        }
+    }
+
+    @Benchmark
+    public StatisticsDto getStatistics() {
+        return transactionService.getStatistics();
+    }
+
+    //Read from the window totals and the per-second and per-minute rollups
+    @Benchmark
+    public StatisticsDto getHourStatistics() {
+        return transactionService.getStatistics(3600);
+    }
+}
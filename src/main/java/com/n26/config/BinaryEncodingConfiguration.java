@@ -0,0 +1,46 @@
+package com.n26.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Lets the API read and write CBOR and Smile next to JSON, chosen by Content-Type and Accept.
+ * The binary mappers are set up like the JSON one, so amounts stay exact decimal strings in every encoding.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class BinaryEncodingConfiguration implements WebMvcConfigurer {
+    private final Jackson2ObjectMapperBuilder objectMapperBuilder;
+
+    public BinaryEncodingConfiguration(Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        this.objectMapperBuilder = objectMapperBuilder;
+    }
+
+    /**
+     * Spring registers CBOR and Smile converters of its own once the formats are on the classpath, but with plain
+     * mappers that write amounts as numbers. They are replaced at the end of the list, so JSON stays first for clients accepting anything.
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.removeIf(converter -> converter instanceof MappingJackson2CborHttpMessageConverter
+                || converter instanceof MappingJackson2SmileHttpMessageConverter);
+        converters.add(new MappingJackson2CborHttpMessageConverter(configure(new ObjectMapper(new CBORFactory()))));
+        converters.add(new MappingJackson2SmileHttpMessageConverter(configure(new ObjectMapper(new SmileFactory()))));
+    }
+
+    private ObjectMapper configure(ObjectMapper objectMapper) {
+        //The builder is shared with the JSON mapper, so it is only applied, never changed
+        objectMapperBuilder.configure(objectMapper);
+        return JacksonObjectMapperConfiguration.configure(objectMapper);
+    }
+}
@@ -4,14 +4,26 @@ import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
 
 import java.math.BigDecimal;
 
 @Configuration
 public class JacksonObjectMapperConfiguration {
+    public static final String APPLICATION_CBOR_VALUE = "application/cbor";
+    public static final MediaType APPLICATION_CBOR = MediaType.valueOf(APPLICATION_CBOR_VALUE);
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+    public static final MediaType APPLICATION_SMILE = MediaType.valueOf(APPLICATION_SMILE_VALUE);
+
     @Autowired
     public void customize(ObjectMapper objectMapper) {
+        configure(objectMapper);
+    }
+
+    //Also used for mappers created outside the context and for the binary encodings, so they all write the same values
+    public static ObjectMapper configure(ObjectMapper objectMapper) {
         objectMapper
                 .configOverride(BigDecimal.class).setFormat(JsonFormat.Value.forShape(JsonFormat.Shape.STRING));
+        return objectMapper;
     }
 }
@@ -0,0 +1,131 @@
+package com.n26.controllers;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Splits a newline delimited stream into lines without decoding or allocating per line.
+ * A line that lies within one read chunk is exposed in place, only lines spanning chunks
+ * are copied into a reusable buffer. Lines longer than the limit are consumed but flagged
+ * as truncated, so memory per stream stays bounded.
+ */
+class NdjsonLineReader {
+    private static final int CHUNK_BYTES = 8192;
+
+    private final InputStream in;
+    private final int maxLineBytes;
+    private final byte[] chunk = new byte[CHUNK_BYTES];
+    private int chunkPosition;
+    private int chunkLimit;
+
+    private byte[] lineBuffer = new byte[256];
+    private byte[] line;
+    private int lineOffset;
+    private int lineLength;
+    private boolean truncated;
+    private long lineNumber;
+
+    NdjsonLineReader(InputStream in, int maxLineBytes) {
+        this.in = in;
+        this.maxLineBytes = maxLineBytes;
+    }
+
+    /**
+     * @return false at the end of the stream
+     */
+    boolean next() throws IOException {
+        line = null;
+        lineLength = 0;
+        truncated = false;
+        boolean read = false;
+        while (true) {
+            if (chunkPosition == chunkLimit && !fill()) {
+                if (!read) {
+                    return false;
+                }
+                break;
+            }
+            read = true;
+            int start = chunkPosition;
+            while (chunkPosition < chunkLimit && chunk[chunkPosition] != '\n') {
+                chunkPosition++;
+            }
+            append(start, chunkPosition - start);
+            if (chunkPosition < chunkLimit) {
+                chunkPosition++;
+                break;
+            }
+            if (line == chunk) {
+                //The line continues into the next chunk, which is about to overwrite this one
+                copyToLineBuffer(chunk, lineOffset, lineLength, 0);
+            }
+        }
+        if (lineLength > 0 && line[lineOffset + lineLength - 1] == '\r') {
+            lineLength--;
+        }
+        lineNumber++;
+        return true;
+    }
+
+    byte[] line() {
+        return line;
+    }
+
+    int lineOffset() {
+        return lineOffset;
+    }
+
+    int lineLength() {
+        return lineLength;
+    }
+
+    boolean isBlank() {
+        for (int i = lineOffset; i < lineOffset + lineLength; i++) {
+            if (line[i] != ' ' && line[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    long lineNumber() {
+        return lineNumber;
+    }
+
+    private boolean fill() throws IOException {
+        chunkPosition = 0;
+        chunkLimit = Math.max(in.read(chunk), 0);
+        return chunkLimit > 0;
+    }
+
+    private void append(int start, int length) {
+        if (lineLength + length > maxLineBytes) {
+            truncated = true;
+            length = Math.max(maxLineBytes - lineLength, 0);
+        }
+        if (line == null) {
+            //Common case, the line starts inside the chunk and is read in place
+            line = chunk;
+            lineOffset = start;
+            lineLength = length;
+        } else {
+            copyToLineBuffer(chunk, start, length, lineLength);
+        }
+    }
+
+    private void copyToLineBuffer(byte[] source, int start, int length, int position) {
+        if (position + length > lineBuffer.length) {
+            byte[] grown = new byte[Math.max(lineBuffer.length * 2, position + length)];
+            System.arraycopy(lineBuffer, 0, grown, 0, position);
+            lineBuffer = grown;
+        }
+        System.arraycopy(source, start, lineBuffer, position, length);
+        line = lineBuffer;
+        lineOffset = 0;
+        lineLength = position + length;
+    }
+}
@@ -0,0 +1,91 @@
+package com.n26.controllers;
+
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.n26.dto.TransactionResult;
+import com.n26.exception.AmountOutOfRangeValidationException;
+import com.n26.exception.FutureDateValidationException;
+import com.n26.exception.NotWithInRangeValidationException;
+import com.n26.exception.UnsupportedWindowException;
+import com.n26.model.Transaction;
+import com.n26.service.TransactionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * The transactions and statistics API of {@link TransactionController} on WebFlux, active with the reactive profile,
+ * answering with the same status codes. Adding a transaction and reading the statistics never block, so they run
+ * on the event loop; only clearing, which may wait for the ingest queue to drain, is moved off it.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveTransactionController {
+    private static final Logger log = LoggerFactory.getLogger(ReactiveTransactionController.class);
+    private static final String INGEST_RETRY_AFTER_SECONDS = "1";
+
+    private TransactionService transactionService;
+
+    public ReactiveTransactionController(TransactionService transactionService) {
+        this.transactionService = transactionService;
+    }
+
+    @ExceptionHandler(Throwable.class)
+    public ResponseEntity handleException(Throwable ex) {
+        log.error(ex.getMessage());
+        if (ex instanceof ServerWebInputException) {
+            //The Jackson exception arrives wrapped in a DecodingException
+            for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof InvalidFormatException) {
+                    return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
+                } else if (cause instanceof MismatchedInputException) {
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                }
+            }
+        } else if (ex instanceof FutureDateValidationException || ex instanceof AmountOutOfRangeValidationException) {
+            return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
+        } else if (ex instanceof NotWithInRangeValidationException) {
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        } else if (ex instanceof UnsupportedWindowException) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    //The body is decoded without blocking before this is invoked
+    @PostMapping(value = "/transactions", consumes = "application/json")
+    public ResponseEntity addTransaction(@RequestBody Transaction transaction) {
+        //Stale and future timestamps and a full queue come back as results, so they are answered without a throw or an error log
+        TransactionResult result = transactionService.addTransaction(transaction);
+        if (result == TransactionResult.REJECTED) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.RETRY_AFTER, INGEST_RETRY_AFTER_SECONDS);
+            return new ResponseEntity<>(headers, result.getHttpStatus());
+        }
+        return new ResponseEntity<>(result.getHttpStatus());
+    }
+
+    @DeleteMapping(value = "/transactions")
+    public Mono<ResponseEntity<Void>> deleteAllTransactions() {
+        //Waits for queued transactions to be applied first, which must not hold up an event loop thread
+        return Mono.fromCallable(transactionService::deleteAllTransactions)
+                .subscribeOn(Schedulers.elastic())
+                .map(deleted -> new ResponseEntity<>(deleted ? HttpStatus.NO_CONTENT : HttpStatus.INTERNAL_SERVER_ERROR));
+    }
+
+    @GetMapping(value = "/statistics", produces = "application/json")
+    public ResponseEntity<?> statistics(@RequestParam(value = "window", required = false) String window) {
+        if (window != null)
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(transactionService.getStatistics(StatisticsWindow.toSeconds(window)));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(transactionService.getStatisticsJson());
+    }
+}
@@ -0,0 +1,74 @@
+package com.n26.controllers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.n26.model.StatisticsPoints;
+import com.n26.model.Transaction;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Streams {@link StatisticsPoints} as {"step":ms,"points":[{"start":ms,"sum":"..","avg":"..","max":"..","min":"..","count":n},...]}.
+ * Amounts are decimal strings like in /statistics, formatted from the scaled longs into a reused buffer, so writing
+ * a point allocates nothing unless its sum exceeds a long.
+ */
+final class StatisticsSeriesWriter {
+    //Sign, 19 digits and the decimal point
+    private final char[] buffer = new char[21];
+
+    void write(JsonGenerator generator, StatisticsPoints series) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("step", series.getStepMillis());
+        generator.writeArrayFieldStart("points");
+        for (int i = 0; i < series.size(); i++) {
+            long count = series.getCount(i);
+            generator.writeStartObject();
+            generator.writeNumberField("start", series.getStartMillis(i));
+            if (series.isSumScaled(i)) {
+                long sum = series.getScaledSum(i);
+                writeAmount(generator, "sum", sum);
+                writeAmount(generator, "avg", count == 0 ? 0 : average(sum, count));
+            } else {
+                BigDecimal sum = new BigDecimal(series.getSum(i), Transaction.AMOUNT_SCALE);
+                generator.writeStringField("sum", sum.toString());
+                generator.writeStringField("avg", sum.divide(BigDecimal.valueOf(count), Transaction.AMOUNT_SCALE, BigDecimal.ROUND_HALF_UP).toString());
+            }
+            writeAmount(generator, "max", series.getMax(i));
+            writeAmount(generator, "min", series.getMin(i));
+            generator.writeNumberField("count", count);
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    //Rounds HALF_UP like the average of /statistics
+    private static long average(long sum, long count) {
+        long quotient = sum / count;
+        long remainder = Math.abs(sum % count);
+        return remainder >= count - remainder ? quotient + Long.signum(sum) : quotient;
+    }
+
+    private void writeAmount(JsonGenerator generator, String field, long scaledAmount) throws IOException {
+        generator.writeFieldName(field);
+        //Its magnitude does not fit in a long
+        if (scaledAmount == Long.MIN_VALUE) {
+            generator.writeString(Transaction.toBigDecimal(scaledAmount).toString());
+            return;
+        }
+        long magnitude = Math.abs(scaledAmount);
+        int start = buffer.length;
+        for (int digit = 0; digit < Transaction.AMOUNT_SCALE; digit++, magnitude /= 10) {
+            buffer[--start] = (char) ('0' + magnitude % 10);
+        }
+        buffer[--start] = '.';
+        do {
+            buffer[--start] = (char) ('0' + magnitude % 10);
+            magnitude /= 10;
+        } while (magnitude != 0);
+        if (scaledAmount < 0) {
+            buffer[--start] = '-';
+        }
+        generator.writeString(buffer, start, buffer.length - start);
+    }
+}
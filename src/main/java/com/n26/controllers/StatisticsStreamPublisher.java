@@ -0,0 +1,244 @@
+package com.n26.controllers;
+
+import com.n26.service.TransactionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes the statistics to Server-Sent Events subscribers instead of having them poll.
+ * <p>
+ * Once per n26.statistics-push-ms tick the statistics JSON is read once, through the same per-version cache as
+ * GET /statistics, framed as an event once and offered to every subscriber when it changed. Unchanged statistics are
+ * sent again every {@link #HEARTBEAT_MS}, so connections that went away are noticed.
+ * <p>
+ * Events are written with non-blocking servlet output, so a slow client never holds a thread and cannot delay the
+ * others. A subscriber has at most one event waiting besides the one being written: a newer one replaces it, so a
+ * client that falls behind only ever receives the latest statistics and never costs more than two events of memory.
+ * A subscriber whose write has not gone out within n26.statistics-push-write-timeout-ms is dropped.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class StatisticsStreamPublisher {
+    private static final Logger log = LoggerFactory.getLogger(StatisticsStreamPublisher.class);
+    public static final long HEARTBEAT_MS = 15_000;
+    private static final byte[] EVENT_PREFIX = "event:statistics\ndata:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EVENT_SUFFIX = "\n\n".getBytes(StandardCharsets.UTF_8);
+
+    @Value("${n26.statistics-push-ms:500}")
+    protected long pushMs;
+    @Value("${n26.statistics-push-write-timeout-ms:5000}")
+    protected long writeTimeoutMs;
+
+    private final TransactionService transactionService;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService ticker;
+    //Only touched by the ticker thread
+    private byte[] lastPushed;
+    private long lastPushedAtMillis;
+
+    public StatisticsStreamPublisher(TransactionService transactionService) {
+        this.transactionService = transactionService;
+    }
+
+    @PostConstruct
+    public void init() {
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "statistics-push");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, pushMs, pushMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if(ticker != null)
+            ticker.shutdownNow();
+        subscribers.forEach(Subscriber::drop);
+    }
+
+    /**
+     * Turns the request into a subscription, which receives the current statistics straight away and then every change.
+     * It lasts until the client disconnects or is dropped.
+     */
+    public void subscribe(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.TEXT_EVENT_STREAM_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader("Cache-Control", "no-cache");
+        AsyncContext context = request.startAsync(request, response);
+        context.setTimeout(0);
+        Subscriber subscriber = new Subscriber(context, response.getOutputStream());
+        context.addListener(subscriber);
+        subscribers.add(subscriber);
+        subscriber.offer(toEvent(transactionService.getStatisticsJson()));
+        //The container calls onWritePossible once the listener is set, which writes the first event
+        subscriber.out.setWriteListener(subscriber);
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    private void tick() {
+        try {
+            //Nobody listening, so nothing is computed
+            if(subscribers.isEmpty())
+                return;
+            long now = System.currentTimeMillis();
+            for (Subscriber subscriber : subscribers) {
+                if(subscriber.isStalled(now - writeTimeoutMs)){
+                    log.warn("Dropping statistics subscriber whose write did not complete within {} ms", writeTimeoutMs);
+                    subscriber.drop();
+                }
+            }
+            byte[] json = transactionService.getStatisticsJson();
+            if(Arrays.equals(json, lastPushed) && now - lastPushedAtMillis < HEARTBEAT_MS)
+                return;
+            lastPushed = json;
+            lastPushedAtMillis = now;
+            //Framed once, every subscriber writes the same bytes
+            byte[] event = toEvent(json);
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(event);
+            }
+        } catch (Exception e) {
+            //An exception would cancel the schedule
+            log.error("Statistics push failed", e);
+        }
+    }
+
+    private static byte[] toEvent(byte[] json) {
+        byte[] event = new byte[EVENT_PREFIX.length + json.length + EVENT_SUFFIX.length];
+        System.arraycopy(EVENT_PREFIX, 0, event, 0, EVENT_PREFIX.length);
+        System.arraycopy(json, 0, event, EVENT_PREFIX.length, json.length);
+        System.arraycopy(EVENT_SUFFIX, 0, event, EVENT_PREFIX.length + json.length, EVENT_SUFFIX.length);
+        return event;
+    }
+
+    /**
+     * Writes are serialised on the subscriber, by the ticker offering an event and the container calling
+     * onWritePossible. Neither blocks, the output only takes what it can send or buffer.
+     */
+    private final class Subscriber implements WriteListener, AsyncListener {
+        private final AsyncContext context;
+        private final ServletOutputStream out;
+        //The one event waiting to be written, replaced when a newer one arrives first
+        private byte[] pending;
+        private boolean flushed = true;
+        private boolean listening;
+        private boolean dropped;
+        //When the output last refused a write, 0 while nothing is waiting on it
+        private volatile long stalledSinceMillis;
+
+        Subscriber(AsyncContext context, ServletOutputStream out) {
+            this.context = context;
+            this.out = out;
+        }
+
+        synchronized void offer(byte[] event) {
+            pending = event;
+            //Until the listener is set, the container has not yet allowed any write
+            if(listening)
+                write();
+        }
+
+        @Override
+        public synchronized void onWritePossible() {
+            listening = true;
+            write();
+        }
+
+        private void write() {
+            if(dropped)
+                return;
+            try {
+                while (out.isReady()) {
+                    if(!flushed){
+                        flushed = true;
+                        out.flush();
+                    } else if(pending != null){
+                        byte[] event = pending;
+                        pending = null;
+                        flushed = false;
+                        out.write(event);
+                    } else {
+                        stalledSinceMillis = 0;
+                        return;
+                    }
+                }
+                //onWritePossible follows once the client has taken what is buffered
+                if(stalledSinceMillis == 0)
+                    stalledSinceMillis = System.currentTimeMillis();
+            } catch (IOException | IllegalStateException e) {
+                //The client went away or the response was already completed
+                drop();
+            }
+        }
+
+        boolean isStalled(long deadlineMillis) {
+            long stalledSince = stalledSinceMillis;
+            return stalledSince != 0 && stalledSince < deadlineMillis;
+        }
+
+        synchronized void drop() {
+            subscribers.remove(this);
+            if(dropped)
+                return;
+            dropped = true;
+            pending = null;
+            try {
+                context.complete();
+            } catch (IllegalStateException e) {
+                //Already completed by the container
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            drop();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            subscribers.remove(this);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            drop();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            drop();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
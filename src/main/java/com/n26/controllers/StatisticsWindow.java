@@ -0,0 +1,28 @@
+package com.n26.controllers;
+
+import com.n26.exception.UnsupportedWindowException;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Parses the window and step request parameters of the statistics endpoints, such as 10s, 5m or 1h. A plain number is seconds.
+ */
+final class StatisticsWindow {
+    private StatisticsWindow() {
+    }
+
+    static int toSeconds(String window) throws UnsupportedWindowException {
+        final Duration duration;
+        try {
+            duration = DurationStyle.detectAndParse(window, ChronoUnit.SECONDS);
+        } catch (IllegalArgumentException e) {
+            throw new UnsupportedWindowException("Unsupported window " + window, e);
+        }
+        //Windows are whole seconds, the resolution of the rollup
+        if (duration.getNano() != 0 || duration.getSeconds() > Integer.MAX_VALUE || duration.getSeconds() < Integer.MIN_VALUE)
+            throw new UnsupportedWindowException("Unsupported window " + window);
+        return (int) duration.getSeconds();
+    }
+}
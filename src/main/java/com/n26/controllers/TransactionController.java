@@ -1,32 +1,73 @@
 package com.n26.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.exc.InvalidFormatException;
 import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.n26.config.JacksonObjectMapperConfiguration;
+import com.n26.dto.EvictionStatisticsDto;
+import com.n26.dto.IngestStatisticsDto;
+import com.n26.dto.IngestSummaryDto;
+import com.n26.dto.PercentileStatisticsDto;
 import com.n26.dto.StatisticsDto;
-import com.n26.dto.TransactionDto;
+import com.n26.dto.StatisticsSnapshotDto;
+import com.n26.dto.TransactionCountDto;
+import com.n26.dto.TransactionResult;
+import com.n26.exception.AmountOutOfRangeValidationException;
 import com.n26.exception.FutureDateValidationException;
 import com.n26.exception.NotWithInRangeValidationException;
+import com.n26.exception.UnsupportedGroupException;
+import com.n26.exception.UnsupportedWindowException;
+import com.n26.model.StatisticsPoints;
+import com.n26.model.Transaction;
+import com.n26.service.TransactionBatch;
 import com.n26.service.TransactionService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @Api(value = "Statistics", description = "Rest API for Statistics operations", tags = "Statistics API")
 public class TransactionController {
     private static final Logger log = LoggerFactory.getLogger(TransactionController.class);
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+    //A transaction line is well under 100 bytes, anything this long is rejected without being buffered
+    private static final int MAX_NDJSON_LINE_BYTES = 64 * 1024;
+    private static final int MAX_REPORTED_MALFORMED_LINES = 100;
+    //A drained queue frees up within milliseconds, so clients may retry almost straight away
+    private static final String INGEST_RETRY_AFTER_SECONDS = "1";
 
     private TransactionService transactionService;
+    private ObjectMapper objectMapper;
+    private StatisticsStreamPublisher statisticsStreamPublisher;
 
-    public TransactionController(TransactionService transactionService) {
+    public TransactionController(TransactionService transactionService, ObjectMapper objectMapper, StatisticsStreamPublisher statisticsStreamPublisher) {
         this.transactionService = transactionService;
+        this.objectMapper = objectMapper;
+        this.statisticsStreamPublisher = statisticsStreamPublisher;
     }
 
     @ExceptionHandler(Throwable.class)
@@ -39,22 +80,148 @@ public class TransactionController {
             }else if(actualCause instanceof MismatchedInputException) {
                 return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
             }
-        }else if (ex instanceof FutureDateValidationException) {
+        }else if (ex instanceof FutureDateValidationException || ex instanceof AmountOutOfRangeValidationException) {
             return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
         }else if (ex instanceof NotWithInRangeValidationException) {
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }else if (ex instanceof UnsupportedWindowException || ex instanceof UnsupportedGroupException) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
 
         return new ResponseEntity<>(null,HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
-    @ApiOperation(value = "Create Transaction", response = ResponseEntity.class, consumes = "application/json", produces = "application/json")
-    @PostMapping(value = "/transactions", consumes = "application/json")
-    public ResponseEntity addTransaction(@RequestBody TransactionDto transaction) throws FutureDateValidationException,NotWithInRangeValidationException{
+    @ApiOperation(value = "Create Transaction", response = ResponseEntity.class, consumes = "application/json, application/cbor, application/x-jackson-smile", produces = "application/json")
+    @PostMapping(value = "/transactions", consumes = {MediaType.APPLICATION_JSON_VALUE, JacksonObjectMapperConfiguration.APPLICATION_CBOR_VALUE, JacksonObjectMapperConfiguration.APPLICATION_SMILE_VALUE})
+    public ResponseEntity addTransaction(@RequestBody Transaction transaction) {
+        //Stale and future timestamps and a full queue come back as results, so they are answered without a throw or an error log
+        TransactionResult result = transactionService.addTransaction(transaction);
+        if (result == TransactionResult.REJECTED) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.RETRY_AFTER, INGEST_RETRY_AFTER_SECONDS);
+            return new ResponseEntity<>(headers, result.getHttpStatus());
+        }
+        return new ResponseEntity<>(result.getHttpStatus());
+    }
+
+    /**
+     * Streams a JSON array of transactions into the store and answers with one result per item, in order.
+     * Neither the request nor the response is held in memory, so batch size is not limited by the heap.
+     * Items are validated independently; a syntax error ends the batch with a final MALFORMED result.
+     */
+    @ApiOperation(value = "Create Transactions in batch", consumes = "application/json", produces = "application/json")
+    @PostMapping(value = "/transactions/batch", consumes = "application/json")
+    public void addTransactions(InputStream body, HttpServletResponse response) throws IOException {
+        ObjectReader reader = objectMapper.readerFor(Transaction.class);
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (!startsWithArray(parser)) {
+                response.setStatus(HttpStatus.BAD_REQUEST.value());
+                return;
+            }
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            long items = 0;
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream());
+                 TransactionBatch batch = transactionService.newBatch()) {
+                generator.writeStartArray();
+                try {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        writeResult(generator, readAndAdd(parser, reader, batch));
+                        items++;
+                    }
+                } catch (JsonParseException e) {
+                    log.error(e.getMessage());
+                    writeResult(generator, TransactionResult.MALFORMED);
+                }
+                generator.writeEndArray();
+            }
+            log.info("Batch of {} transactions processed", items);
+        }
+    }
+
+    /**
+     * Streams newline delimited transactions into the store, one JSON object per line, each applied as soon as
+     * its line is read. Memory per request is constant however large the upload is. Malformed lines are
+     * counted and skipped instead of aborting the stream.
+     */
+    @ApiOperation(value = "Create Transactions from NDJSON stream", response = IngestSummaryDto.class, consumes = APPLICATION_NDJSON, produces = "application/json")
+    @PostMapping(value = "/transactions/batch", consumes = APPLICATION_NDJSON)
+    public IngestSummaryDto addTransactionStream(InputStream body) throws IOException {
+        ObjectReader reader = objectMapper.readerFor(Transaction.class);
+        NdjsonLineReader lines = new NdjsonLineReader(body, MAX_NDJSON_LINE_BYTES);
+        long[] results = new long[TransactionResult.values().length];
+        List<Long> malformedLines = new ArrayList<>();
+        try (TransactionBatch batch = transactionService.newBatch()) {
+            while (lines.next()) {
+                if (lines.isBlank())
+                    continue;
+                TransactionResult result = lines.isTruncated() ? TransactionResult.MALFORMED : readLineAndAdd(lines, reader, batch);
+                results[result.ordinal()]++;
+                if (result == TransactionResult.MALFORMED && malformedLines.size() < MAX_REPORTED_MALFORMED_LINES)
+                    malformedLines.add(lines.lineNumber());
+            }
+        }
+        log.info("Stream of {} lines processed", lines.lineNumber());
+        return new IngestSummaryDto(
+                results[TransactionResult.CREATED.ordinal()],
+                results[TransactionResult.TOO_OLD.ordinal()],
+                results[TransactionResult.FUTURE.ordinal()],
+                results[TransactionResult.INVALID.ordinal()],
+                results[TransactionResult.MALFORMED.ordinal()],
+                results[TransactionResult.DUPLICATE.ordinal()],
+                malformedLines);
+    }
 
-        transactionService.addTransaction(transaction);
+    private TransactionResult readLineAndAdd(NdjsonLineReader lines, ObjectReader reader, TransactionBatch batch) throws IOException {
+        final Transaction transaction;
+        try {
+            transaction = reader.readValue(lines.line(), lines.lineOffset(), lines.lineLength());
+        } catch (InvalidFormatException e) {
+            return TransactionResult.INVALID;
+        } catch (JsonProcessingException e) {
+            return TransactionResult.MALFORMED;
+        }
+        return batch.add(transaction);
+    }
+
+    private static boolean startsWithArray(JsonParser parser) throws IOException {
+        try {
+            return parser.nextToken() == JsonToken.START_ARRAY;
+        } catch (JsonParseException e) {
+            return false;
+        }
+    }
+
+    private TransactionResult readAndAdd(JsonParser parser, ObjectReader reader, TransactionBatch batch) throws IOException {
+        //The batch array, so an item that fails to bind can be skipped up to its end
+        JsonStreamContext array = parser.getCurrentToken().isStructStart() ? parser.getParsingContext().getParent() : parser.getParsingContext();
+        final Transaction transaction;
+        try {
+            //Bound straight from the parser, so the item goes through the allocation-free deserializer
+            transaction = reader.readValue(parser);
+        } catch (JsonParseException e) {
+            throw e;
+        } catch (InvalidFormatException e) {
+            skipRestOfItem(parser, array);
+            return TransactionResult.INVALID;
+        } catch (JsonProcessingException e) {
+            skipRestOfItem(parser, array);
+            return TransactionResult.MALFORMED;
+        }
+        return batch.add(transaction);
+    }
+
+    private static void skipRestOfItem(JsonParser parser, JsonStreamContext array) throws IOException {
+        while (parser.getParsingContext() != array && parser.nextToken() != null) {
+            parser.skipChildren();
+        }
+    }
 
-        return new ResponseEntity<>(HttpStatus.CREATED);
+    private static void writeResult(JsonGenerator generator, TransactionResult result) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("result", result.name());
+        generator.writeNumberField("status", result.getStatus());
+        generator.writeEndObject();
     }
 
     @ApiOperation(value = "Clear Transactions")
@@ -67,9 +234,107 @@ public class TransactionController {
         }
     }
 
-    @GetMapping(value = "/statistics")
-    @ApiOperation(value = "Get Statistics", response = StatisticsDto.class, produces = "application/json")
-    public StatisticsDto statistics() {
-        return transactionService.getStatistics();
+    @ApiOperation(value = "Get Ingest Statistics", response = IngestStatisticsDto.class, produces = "application/json")
+    @GetMapping(value = "/transactions/ingest")
+    public IngestStatisticsDto ingestStatistics() {
+        return transactionService.getIngestStatistics();
+    }
+
+    @ApiOperation(value = "Count Transactions", response = TransactionCountDto.class, produces = "application/json")
+    @GetMapping(value = "/transactions/count")
+    public TransactionCountDto transactionCount() {
+        return transactionService.getTransactionCount();
+    }
+
+    @GetMapping(value = "/statistics", produces = {MediaType.APPLICATION_JSON_VALUE, JacksonObjectMapperConfiguration.APPLICATION_CBOR_VALUE, JacksonObjectMapperConfiguration.APPLICATION_SMILE_VALUE})
+    @ApiOperation(value = "Get Statistics", response = StatisticsDto.class, produces = "application/json, application/cbor, application/x-jackson-smile")
+    public ResponseEntity<?> statistics(@RequestParam(value = "window", required = false) String window,
+                                        @RequestParam(value = "groupBy", required = false) String groupBy,
+                                        @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        MediaType mediaType = statisticsMediaType(accept);
+        if (groupBy != null) {
+            //Keys are only tracked for the interval
+            if (window != null && StatisticsWindow.toSeconds(window) != transactionService.getInterval())
+                throw new UnsupportedWindowException("Grouped statistics are only kept for the interval");
+            return ResponseEntity.ok().contentType(mediaType).body(transactionService.getGroupedStatistics(groupBy));
+        }
+        if (window != null) {
+            //Any other window is aggregated on request from the shared buckets and rollups
+            return ResponseEntity.ok().contentType(mediaType).body(transactionService.getStatistics(StatisticsWindow.toSeconds(window)));
+        }
+        if (mediaType == MediaType.APPLICATION_JSON_UTF8) {
+            //Encoded once per change of the window, so identical statistics are not serialized again
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(transactionService.getStatisticsJson());
+        }
+        //The binary encodings are written by their message converters
+        return ResponseEntity.ok().contentType(mediaType).body(transactionService.getStatistics());
+    }
+
+    /**
+     * Picks the encoding the client prefers most by quality and specificity, JSON when it has no preference.
+     */
+    private static MediaType statisticsMediaType(String accept) {
+        //Most clients only ever ask for JSON, which needs no parsing of the header
+        if (accept == null || !(accept.contains("cbor") || accept.contains("smile")))
+            return MediaType.APPLICATION_JSON_UTF8;
+        List<MediaType> accepted = MediaType.parseMediaTypes(accept);
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (MediaType mediaType : accepted) {
+            if (mediaType.includes(MediaType.APPLICATION_JSON))
+                return MediaType.APPLICATION_JSON_UTF8;
+            if (mediaType.includes(JacksonObjectMapperConfiguration.APPLICATION_CBOR))
+                return JacksonObjectMapperConfiguration.APPLICATION_CBOR;
+            if (mediaType.includes(JacksonObjectMapperConfiguration.APPLICATION_SMILE))
+                return JacksonObjectMapperConfiguration.APPLICATION_SMILE;
+        }
+        return MediaType.APPLICATION_JSON_UTF8;
+    }
+
+    /**
+     * Streams sum, avg, max, min and count per step of the window, the interval unless given, oldest first.
+     * The points are read into primitive arrays and written straight to the response.
+     */
+    @GetMapping(value = "/statistics/series", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Get Statistics Series", produces = "application/json")
+    public void statisticsSeries(@RequestParam(value = "step", defaultValue = "1s") String step,
+                                 @RequestParam(value = "window", required = false) String window,
+                                 HttpServletResponse response) throws IOException {
+        int windowSeconds = window == null ? transactionService.getInterval() : StatisticsWindow.toSeconds(window);
+        StatisticsPoints series = transactionService.getStatisticsSeries(StatisticsWindow.toSeconds(step), windowSeconds);
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            new StatisticsSeriesWriter().write(generator, series);
+        }
+    }
+
+    /**
+     * Streams the statistics as Server-Sent Events named statistics: the current ones first, then every change.
+     */
+    @GetMapping(value = "/statistics/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ApiOperation(value = "Stream Statistics", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public void statisticsStream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        statisticsStreamPublisher.subscribe(request, response);
+    }
+
+    /**
+     * Approximate median, 95th and 99th percentile of the amounts in the window, each within the reported relative error.
+     */
+    @GetMapping(value = "/statistics/percentiles")
+    @ApiOperation(value = "Get Percentile Statistics", response = PercentileStatisticsDto.class, produces = "application/json")
+    public PercentileStatisticsDto percentileStatistics() {
+        return transactionService.getPercentileStatistics();
+    }
+
+    @GetMapping(value = "/statistics/snapshot")
+    @ApiOperation(value = "Get Statistics Snapshot", response = StatisticsSnapshotDto.class, produces = "application/json")
+    public StatisticsSnapshotDto statisticsSnapshot() {
+        return transactionService.getStatisticsSnapshot();
+    }
+
+    @GetMapping(value = "/statistics/eviction")
+    @ApiOperation(value = "Get Eviction Statistics", response = EvictionStatisticsDto.class, produces = "application/json")
+    public EvictionStatisticsDto evictionStatistics() {
+        return transactionService.getEvictionStatistics();
     }
 }
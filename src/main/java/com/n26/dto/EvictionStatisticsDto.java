@@ -0,0 +1,15 @@
+package com.n26.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class EvictionStatisticsDto {
+    //Background eviction period, 0 when buckets are only evicted on the request path
+    private long evictionMs;
+    private long evictedBuckets;
+    private long evictedTransactions;
+}
@@ -0,0 +1,18 @@
+package com.n26.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class GroupedStatisticsDto {
+    private String groupBy;
+    //The tracked keys with the most transactions in the window, most first
+    private Map<String, StatisticsDto> top;
+    //Every untracked key, and tracked keys before they were tracked
+    private StatisticsDto other;
+}
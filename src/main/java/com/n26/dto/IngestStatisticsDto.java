@@ -0,0 +1,19 @@
+package com.n26.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IngestStatisticsDto {
+    //0 when transactions are applied on the request thread
+    private long queueCapacity;
+    private long queueDepth;
+    //Time the most recently applied transaction waited in the queue, 0 when the queue is idle
+    private long drainLagNanos;
+    private long drained;
+    //Rejected with 503 because the queue was full
+    private long rejected;
+}
@@ -0,0 +1,21 @@
+package com.n26.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IngestSummaryDto {
+    private long created;
+    private long tooOld;
+    private long future;
+    private long invalid;
+    private long malformed;
+    private long duplicate;
+    //1-based line numbers of the first malformed lines, capped so the summary stays small
+    private List<Long> malformedLines;
+}
@@ -0,0 +1,19 @@
+package com.n26.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PercentileStatisticsDto {
+    private BigDecimal p50;
+    private BigDecimal p95;
+    private BigDecimal p99;
+    //Each percentile is within this fraction of an amount actually at its rank
+    private double relativeError;
+    private long count;
+}
@@ -0,0 +1,16 @@
+package com.n26.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StatisticsSnapshotDto {
+    //Configured staleness bound, 0 when statistics are computed on every request
+    private long refreshMs;
+    private long ageMs;
+    private long refreshNanos;
+    private StatisticsDto statistics;
+}
@@ -0,0 +1,15 @@
+package com.n26.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TransactionCountDto {
+    //Transactions held by the store, including buckets not evicted yet
+    private long live;
+    //Transactions the statistics would count right now
+    private long inWindow;
+}
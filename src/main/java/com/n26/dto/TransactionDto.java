@@ -13,4 +13,14 @@ import java.time.LocalDateTime;
 public class TransactionDto {
     private BigDecimal amount;
     private LocalDateTime timestamp;
+    private String merchant;
+    private String transactionId;
+
+    public TransactionDto(BigDecimal amount, LocalDateTime timestamp) {
+        this(amount, timestamp, null, null);
+    }
+
+    public TransactionDto(BigDecimal amount, LocalDateTime timestamp, String merchant) {
+        this(amount, timestamp, merchant, null);
+    }
 }
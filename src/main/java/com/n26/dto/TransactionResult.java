@@ -0,0 +1,34 @@
+package com.n26.dto;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Outcome of adding one transaction, with the status the single transaction endpoint answers for it.
+ * Stale and future timestamps, and a full ingest queue, are ordinary outcomes rather than exceptions, so a burst of
+ * them costs no stack traces.
+ */
+public enum TransactionResult {
+    CREATED(HttpStatus.CREATED),
+    TOO_OLD(HttpStatus.NO_CONTENT),
+    FUTURE(HttpStatus.UNPROCESSABLE_ENTITY),
+    INVALID(HttpStatus.UNPROCESSABLE_ENTITY),
+    MALFORMED(HttpStatus.BAD_REQUEST),
+    //A retry of a transaction that was already counted, answered with success but not counted again
+    DUPLICATE(HttpStatus.OK),
+    //Turned away by a full ingest queue and not counted, the client may retry
+    REJECTED(HttpStatus.SERVICE_UNAVAILABLE);
+
+    private final HttpStatus httpStatus;
+
+    TransactionResult(HttpStatus httpStatus) {
+        this.httpStatus = httpStatus;
+    }
+
+    public HttpStatus getHttpStatus() {
+        return httpStatus;
+    }
+
+    public int getStatus() {
+        return httpStatus.value();
+    }
+}
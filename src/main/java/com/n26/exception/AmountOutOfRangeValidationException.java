@@ -0,0 +1,11 @@
+package com.n26.exception;
+
+public class AmountOutOfRangeValidationException extends RuntimeException {
+    public AmountOutOfRangeValidationException(String msg) {
+        super(msg);
+    }
+
+    public AmountOutOfRangeValidationException(String msg, Throwable t) {
+        super(msg, t);
+    }
+}
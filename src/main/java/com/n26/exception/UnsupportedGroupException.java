@@ -0,0 +1,11 @@
+package com.n26.exception;
+
+public class UnsupportedGroupException extends RuntimeException {
+    public UnsupportedGroupException(String msg) {
+        super(msg);
+    }
+
+    public UnsupportedGroupException(String msg, Throwable t) {
+        super(msg, t);
+    }
+}
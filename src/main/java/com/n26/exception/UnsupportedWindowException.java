@@ -0,0 +1,11 @@
+package com.n26.exception;
+
+public class UnsupportedWindowException extends RuntimeException {
+    public UnsupportedWindowException(String msg) {
+        super(msg);
+    }
+
+    public UnsupportedWindowException(String msg, Throwable t) {
+        super(msg, t);
+    }
+}
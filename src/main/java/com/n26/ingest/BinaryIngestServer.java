@@ -0,0 +1,263 @@
+package com.n26.ingest;
+
+import com.n26.dto.TransactionResult;
+import com.n26.service.TransactionBatch;
+import com.n26.service.TransactionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+/**
+ * Binary ingest listener for internal producers, enabled by n26.binary-ingest-port.
+ * <p>
+ * A frame is a 4 byte payload length followed by fixed 16 byte records, each the epoch millis and the amount
+ * in cents as longs, all big-endian. Every frame is applied through one {@link TransactionBatch} and answered
+ * with a single 16 byte ack of four ints: records, created, too old and future. A record that was not counted
+ * for any other reason is in none of the last three. A length that is negative,
+ * not a multiple of the record size or above {@link #MAX_RECORDS_PER_FRAME} records closes the connection.
+ * <p>
+ * One selector thread serves every connection and reads the records straight out of a direct buffer, so a
+ * record costs no allocation. While a client is not reading its acks, reading from it pauses.
+ * Like the batch endpoints, frames go straight to the window and bypass the ingest queue.
+ */
+@Component
+public class BinaryIngestServer {
+    private static final Logger log = LoggerFactory.getLogger(BinaryIngestServer.class);
+    public static final int HEADER_BYTES = 4;
+    public static final int RECORD_BYTES = 16;
+    public static final int ACK_BYTES = 16;
+    public static final int MAX_RECORDS_PER_FRAME = 8192;
+    //Acks of frames parsed in one pass, further frames wait in the read buffer until these are sent
+    private static final int MAX_PENDING_ACKS = 256;
+
+    @Value("${n26.binary-ingest-port:0}")
+    protected int port;
+
+    private final TransactionService transactionService;
+    private Selector selector;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    public BinaryIngestServer(TransactionService transactionService) {
+        this.transactionService = transactionService;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if(port > 0)
+            start(port);
+    }
+
+    /**
+     * Binds the listener and starts the selector thread.
+     * @param port 0 binds any free port
+     * @return the port bound
+     */
+    public synchronized int start(int port) throws IOException {
+        selector = Selector.open();
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        selectorThread = new Thread(this::run, "binary-ingest");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        int localPort = serverChannel.socket().getLocalPort();
+        log.info("Binary ingest listening on port {}", localPort);
+        return localPort;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if(selector == null)
+            return;
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        selector = null;
+    }
+
+    private void run() {
+        Selector selector = this.selector;
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Binary ingest selector failed", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        try {
+            if(key.isAcceptable()){
+                accept((ServerSocketChannel) key.channel());
+                return;
+            }
+            Connection connection = (Connection) key.attachment();
+            if(key.isReadable())
+                connection.read();
+            else if(key.isWritable())
+                connection.process();
+        } catch (IOException e) {
+            //Only this client is dropped, the others keep streaming
+            log.warn("Closing binary ingest connection: {}", e.getMessage());
+            closeQuietly(key);
+        } catch (RuntimeException e) {
+            //A bug hit by one client must not stop the selector thread that serves all of them
+            if(key.attachment() == null){
+                log.error("Accepting a binary ingest connection failed", e);
+                return;
+            }
+            log.error("Closing binary ingest connection after an unexpected failure", e);
+            closeQuietly(key);
+        }
+    }
+
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if(channel == null)
+            return;
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        closeQuietly(key.channel());
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            log.debug("Close failed", e);
+        }
+    }
+
+    /**
+     * Read and ack buffers of one client, only touched by the selector thread.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        //Always has room for a whole frame, so a complete frame never waits for buffer space
+        private final ByteBuffer in = ByteBuffer.allocateDirect(HEADER_BYTES + MAX_RECORDS_PER_FRAME * RECORD_BYTES);
+        private final ByteBuffer acks = ByteBuffer.allocateDirect(MAX_PENDING_ACKS * ACK_BYTES);
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void read() throws IOException {
+            if(channel.read(in) < 0){
+                closeQuietly(key);
+                return;
+            }
+            process();
+        }
+
+        /**
+         * Applies the complete frames in the read buffer and sends their acks. While acks cannot be written
+         * the connection only waits for writability, so a client that stops reading is not read from either.
+         */
+        void process() throws IOException {
+            while (true) {
+                boolean acksFull = applyFrames();
+                acks.flip();
+                channel.write(acks);
+                boolean pending = acks.hasRemaining();
+                acks.compact();
+                if(pending){
+                    setInterest(SelectionKey.OP_WRITE);
+                    return;
+                }
+                if(!acksFull){
+                    setInterest(SelectionKey.OP_READ);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return true when complete frames may be left because there is no room to ack them
+         */
+        private boolean applyFrames() throws IOException {
+            in.flip();
+            try {
+                while (in.remaining() >= HEADER_BYTES) {
+                    int length = in.getInt(in.position());
+                    if(length < 0 || length % RECORD_BYTES != 0 || length > MAX_RECORDS_PER_FRAME * RECORD_BYTES)
+                        throw new IOException("Invalid frame length " + length);
+                    if(in.remaining() < HEADER_BYTES + length)
+                        return false;
+                    if(acks.remaining() < ACK_BYTES)
+                        return true;
+                    in.position(in.position() + HEADER_BYTES);
+                    applyFrame(length / RECORD_BYTES);
+                }
+                return false;
+            } finally {
+                in.compact();
+            }
+        }
+
+        private void applyFrame(int records) {
+            int created = 0;
+            int tooOld = 0;
+            int future = 0;
+            try (TransactionBatch batch = transactionService.newBatch()) {
+                for (int i = 0; i < records; i++) {
+                    long timestampMillis = in.getLong();
+                    long amount = in.getLong();
+                    TransactionResult result = batch.add(timestampMillis, amount);
+                    if(result == TransactionResult.CREATED)
+                        created++;
+                    else if(result == TransactionResult.TOO_OLD)
+                        tooOld++;
+                    else if(result == TransactionResult.FUTURE)
+                        future++;
+                }
+            }
+            //Acked once the batch is closed, so an acked record is already in the statistics
+            acks.putInt(records).putInt(created).putInt(tooOld).putInt(future);
+        }
+
+        private void setInterest(int ops) {
+            if(key.interestOps() != ops)
+                key.interestOps(ops);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.n26.model;
+
+import com.n26.dto.StatisticsDto;
+import lombok.Value;
+
+/**
+ * Statistics with their UTF-8 JSON encoding, valid for as long as the window stays at the version they were computed from.
+ */
+@Value
+public class EncodedStatistics {
+    private long version;
+    private StatisticsDto statistics;
+    private byte[] json;
+}
@@ -0,0 +1,30 @@
+package com.n26.model;
+
+import java.math.BigInteger;
+
+/**
+ * Totals per step of a window, read point by point. Point i covers [start + i * step, start + (i + 1) * step),
+ * amounts are scaled like {@link Transaction#getAmount()}.
+ */
+public interface StatisticsPoints {
+    int size();
+
+    long getStepMillis();
+
+    long getStartMillis(int i);
+
+    long getCount(int i);
+
+    long getMax(int i);
+
+    long getMin(int i);
+
+    /**
+     * @return whether {@link #getScaledSum(int)} holds the exact sum, which it does unless the sum exceeds a long
+     */
+    boolean isSumScaled(int i);
+
+    long getScaledSum(int i);
+
+    BigInteger getSum(int i);
+}
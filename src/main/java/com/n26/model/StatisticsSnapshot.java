@@ -0,0 +1,18 @@
+package com.n26.model;
+
+import com.n26.dto.StatisticsDto;
+import lombok.Value;
+
+/**
+ * Statistics computed ahead of time by the refresh scheduler. Never mutated once published.
+ */
+@Value
+public class StatisticsSnapshot {
+    private StatisticsDto statistics;
+    //The statistics as served by GET /statistics
+    private byte[] json;
+    //Wall clock time the snapshot was computed at
+    private long createdAtMillis;
+    //How long computing the snapshot took
+    private long refreshNanos;
+}
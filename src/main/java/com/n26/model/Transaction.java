@@ -1,14 +1,43 @@
 package com.n26.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
 import java.math.BigDecimal;
-import java.time.LocalDateTime;
 
 @Data
 @AllArgsConstructor
+@JsonDeserialize(using = TransactionDeserializer.class)
 public class Transaction {
-    private BigDecimal amount;
-    private LocalDateTime timestamp;
+    //Amounts are kept as a long number of 10^-AMOUNT_SCALE units, i.e. cents
+    public static final int AMOUNT_SCALE = 2;
+
+    private long amount;
+    //Epoch millis of the timestamp read as UTC
+    private long timestampMillis;
+    //Optional dimension the statistics can be grouped by, null when not given
+    private String merchant;
+    //Optional client supplied id, retries of a transaction with the same id and timestamp are only counted once
+    private String transactionId;
+
+    public Transaction(long amount, long timestampMillis) {
+        this(amount, timestampMillis, null, null);
+    }
+
+    public Transaction(long amount, long timestampMillis, String merchant) {
+        this(amount, timestampMillis, merchant, null);
+    }
+
+    /**
+     * Rounds HALF_UP to AMOUNT_SCALE and returns the unscaled value.
+     * @throws ArithmeticException when the amount does not fit in a long
+     */
+    public static long toScaledAmount(BigDecimal amount) {
+        return amount.setScale(AMOUNT_SCALE, BigDecimal.ROUND_HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toBigDecimal(long scaledAmount) {
+        return BigDecimal.valueOf(scaledAmount, AMOUNT_SCALE);
+    }
 }
@@ -0,0 +1,262 @@
+package com.n26.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Reads {"amount":"...","timestamp":"...","merchant":"...","transactionId":"..."} straight into scaled cents and epoch millis.
+ * Plain decimals and yyyy-MM-ddTHH:mm[:ss[.fraction]][Z] timestamps are parsed from the parser's
+ * character buffer without creating a String, BigDecimal or LocalDateTime. Anything else falls back
+ * to the standard BigDecimal and LocalDateTime deserialization, so accepted input, rounding and the
+ * InvalidFormatException / MismatchedInputException raised for bad input are the same as for TransactionDto.
+ */
+public class TransactionDeserializer extends StdDeserializer<Transaction> {
+    //Returned by the fast paths for input they leave to the fallback. Valid input that happens to
+    //produce this value only takes the slow path, it is never misread
+    private static final long UNPARSED = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    public TransactionDeserializer() {
+        super(Transaction.class);
+    }
+
+    @Override
+    public Transaction deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = parser.nextToken();
+        } else if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+            return (Transaction) context.handleUnexpectedToken(Transaction.class, parser);
+        }
+
+        boolean hasAmount = false;
+        boolean hasTimestamp = false;
+        long amount = 0;
+        long timestampMillis = 0;
+        String merchant = null;
+        String transactionId = null;
+        for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            //Field names are canonicalized by the parser, so this does not allocate
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if ("amount".equals(field)) {
+                amount = readAmount(parser, context, value);
+                hasAmount = true;
+            } else if ("timestamp".equals(field)) {
+                timestampMillis = readTimestamp(parser, context, value);
+                hasTimestamp = true;
+            } else if ("merchant".equals(field)) {
+                //Only transactions that carry the dimension pay for the String
+                merchant = readString(parser, context, value);
+            } else if ("transactionId".equals(field)) {
+                transactionId = readString(parser, context, value);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (!hasAmount) {
+            context.reportInputMismatch(this, "Missing amount");
+        }
+        if (!hasTimestamp) {
+            context.reportInputMismatch(this, "Missing timestamp");
+        }
+        return new Transaction(amount, timestampMillis, merchant, transactionId);
+    }
+
+    private static String readString(JsonParser parser, DeserializationContext context, JsonToken value) throws IOException {
+        return value == JsonToken.VALUE_STRING ? parser.getText() : context.readValue(parser, String.class);
+    }
+
+    private long readAmount(JsonParser parser, DeserializationContext context, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_STRING) {
+            long amount = parseScaledAmount(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            if (amount != UNPARSED) {
+                return amount;
+            }
+        }
+        BigDecimal decimal = context.readValue(parser, BigDecimal.class);
+        if (decimal == null) {
+            context.reportInputMismatch(this, "Missing amount");
+        }
+        try {
+            return Transaction.toScaledAmount(decimal);
+        } catch (ArithmeticException e) {
+            throw context.weirdNumberException(decimal, BigDecimal.class, "Amount is too large");
+        }
+    }
+
+    private long readTimestamp(JsonParser parser, DeserializationContext context, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_STRING) {
+            long timestampMillis = parseEpochMillis(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            if (timestampMillis != UNPARSED) {
+                return timestampMillis;
+            }
+        }
+        LocalDateTime timestamp = context.readValue(parser, LocalDateTime.class);
+        if (timestamp == null) {
+            context.reportInputMismatch(this, "Missing timestamp");
+        }
+        return timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * Parses [+-]digits[.digits] into cents, rounding HALF_UP on the third fraction digit.
+     * @return UNPARSED for any other shape or when the result does not fit in a long
+     */
+    static long parseScaledAmount(char[] text, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        boolean negative = false;
+        if (i < end && (text[i] == '-' || text[i] == '+')) {
+            negative = text[i] == '-';
+            i++;
+        }
+
+        long units = 0;
+        int digits = 0;
+        for (; i < end && isDigit(text[i]); i++, digits++) {
+            if (units > (Long.MAX_VALUE - 9) / 10) {
+                return UNPARSED;
+            }
+            units = units * 10 + (text[i] - '0');
+        }
+
+        long cents = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if (i < end && text[i] == '.') {
+            for (i++; i < end && isDigit(text[i]); i++, fractionDigits++) {
+                if (fractionDigits < Transaction.AMOUNT_SCALE) {
+                    cents = cents * 10 + (text[i] - '0');
+                } else if (fractionDigits == Transaction.AMOUNT_SCALE) {
+                    //HALF_UP only depends on the first discarded digit
+                    roundUp = text[i] >= '5';
+                }
+            }
+        }
+        if (i != end || digits + fractionDigits == 0) {
+            return UNPARSED;
+        }
+        for (int scale = fractionDigits; scale < Transaction.AMOUNT_SCALE; scale++) {
+            cents *= 10;
+        }
+
+        if (units > (Long.MAX_VALUE - 100) / 100) {
+            return UNPARSED;
+        }
+        long magnitude = units * 100 + cents + (roundUp ? 1 : 0);
+        return negative ? -magnitude : magnitude;
+    }
+
+    /**
+     * Parses yyyy-MM-ddTHH:mm[:ss[.fraction]][Z] into epoch millis, reading the local date time as UTC
+     * and truncating the fraction to millis like LocalDateTime does.
+     * @return UNPARSED for any other shape or an invalid date, which the fallback then rejects
+     */
+    static long parseEpochMillis(char[] text, int offset, int length) {
+        int end = offset + length;
+        //A trailing Z is read through Instant, which wants the seconds
+        boolean instant = end > offset && text[end - 1] == 'Z';
+        if (instant) {
+            end--;
+        }
+        if (end - offset < 16
+                || text[offset + 4] != '-' || text[offset + 7] != '-' || text[offset + 10] != 'T' || text[offset + 13] != ':') {
+            return UNPARSED;
+        }
+        int year = digits(text, offset, 4);
+        int month = digits(text, offset + 5, 2);
+        int day = digits(text, offset + 8, 2);
+        int hour = digits(text, offset + 11, 2);
+        int minute = digits(text, offset + 14, 2);
+        int second = 0;
+        int millis = 0;
+
+        int i = offset + 16;
+        if (instant && i == end) {
+            return UNPARSED;
+        }
+        if (i < end) {
+            if (end - i < 3 || text[i] != ':') {
+                return UNPARSED;
+            }
+            second = digits(text, i + 1, 2);
+            i += 3;
+            if (i < end) {
+                if (text[i] != '.' || end - i < 2 || end - i > 10) {
+                    return UNPARSED;
+                }
+                int fractionDigits = 0;
+                for (i++; i < end; i++, fractionDigits++) {
+                    if (!isDigit(text[i])) {
+                        return UNPARSED;
+                    }
+                    if (fractionDigits < 3) {
+                        millis = millis * 10 + (text[i] - '0');
+                    }
+                }
+                for (; fractionDigits < 3; fractionDigits++) {
+                    millis *= 10;
+                }
+            }
+        }
+
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return UNPARSED;
+        }
+        return epochDay(year, month, day) * MILLIS_PER_DAY + hour * 3_600_000L + minute * 60_000L + second * 1000L + millis;
+    }
+
+    //Days since 1970-01-01 in the proleptic Gregorian calendar, counting years from March so February is last
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    //Returns -1 when any of the characters is not a digit
+    private static int digits(char[] text, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            if (!isDigit(text[i])) {
+                return -1;
+            }
+            value = value * 10 + (text[i] - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
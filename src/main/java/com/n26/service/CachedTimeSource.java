@@ -0,0 +1,76 @@
+package com.n26.service;
+
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes the current epoch millis and seconds as volatile primitives, refreshed by a
+ * dedicated thread every millisecond. Readers pay a single volatile read instead of a clock
+ * read, LocalDateTime allocation and zone conversion. Values may lag by the tick period
+ * plus scheduling jitter.
+ */
+@Component
+public class CachedTimeSource implements TimeSource {
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private volatile long currentTimeMillis;
+    private volatile long currentTimeSeconds;
+    //Offset of the default zone, looked up by the ticker since TimeZone.getDefault() clones the zone on every call
+    private volatile long offsetMillis;
+    private volatile boolean running;
+    private Thread ticker;
+
+    public CachedTimeSource() {
+        tick();
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        ticker = new Thread(() -> {
+            while (running) {
+                tick();
+                LockSupport.parkNanos(TICK_NANOS);
+            }
+        }, "cached-time-source");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (ticker != null)
+            ticker.interrupt();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return currentTimeMillis;
+    }
+
+    @Override
+    public long currentTimeSeconds() {
+        return currentTimeSeconds;
+    }
+
+    @Override
+    public long preciseTimeMillis() {
+        return System.currentTimeMillis() + offsetMillis;
+    }
+
+    private void tick() {
+        long systemMillis = System.currentTimeMillis();
+        //Refreshed on every tick, so a zone set after startup, like BeanConfig's, is picked up
+        long offset = TimeZone.getDefault().getOffset(systemMillis);
+        offsetMillis = offset;
+        long now = systemMillis + offset;
+        currentTimeMillis = now;
+        currentTimeSeconds = Math.floorDiv(now, 1000);
+    }
+}
@@ -0,0 +1,92 @@
+package com.n26.service;
+
+import com.n26.store.IngestRingBuffer;
+import com.n26.store.SlidingWindowStatistics;
+import com.n26.store.StatisticsBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The single thread that applies queued transactions to the window. Each pass drains what is
+ * published, up to a batch, and applies it through a {@link StatisticsBatch}, so request threads
+ * never contend on the buckets.
+ */
+class IngestWriter implements Runnable, IngestRingBuffer.Consumer {
+    private static final Logger log = LoggerFactory.getLogger(IngestWriter.class);
+    private static final int DRAIN_BATCH_SIZE = 4096;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final IngestRingBuffer queue;
+    private final StatisticsBatch batch;
+    private final TimeSource timeSource;
+
+    private volatile boolean running = true;
+    //Every sequence before this one is applied to the window
+    private volatile long appliedThrough;
+    //Time the last applied transaction spent in the queue
+    private volatile long drainLagNanos;
+
+    private long nowMillis;
+    private long lastEnqueuedNanos;
+
+    IngestWriter(IngestRingBuffer queue, SlidingWindowStatistics window, TimeSource timeSource) {
+        this.queue = queue;
+        this.batch = new StatisticsBatch(window);
+        this.timeSource = timeSource;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                nowMillis = timeSource.currentTimeMillis();
+                int drained = queue.drain(this, DRAIN_BATCH_SIZE);
+                batch.flush();
+                appliedThrough = queue.drained();
+                if (drained > 0) {
+                    drainLagNanos = System.nanoTime() - lastEnqueuedNanos;
+                } else {
+                    drainLagNanos = 0;
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            } catch (Exception e) {
+                //Keep draining, a dead writer would fill the queue and reject every request
+                log.error("Applying queued transactions failed", e);
+            }
+        }
+    }
+
+    @Override
+    public void accept(long timestampMillis, long amount, long enqueuedNanos) {
+        //Validation may have confirmed the timestamp against a fresher clock than the cached one read for this drain
+        batch.add(timestampMillis, amount, Math.max(nowMillis, timestampMillis));
+        lastEnqueuedNanos = enqueuedNanos;
+    }
+
+    /**
+     * Waits until every transaction queued before the call is applied.
+     * @return false when the writer did not catch up within the timeout
+     */
+    boolean awaitApplied(long timeoutMillis) {
+        long target = queue.claimed();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (appliedThrough < target) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        return true;
+    }
+
+    long getDrainLagNanos() {
+        return drainLagNanos;
+    }
+
+    void stop() {
+        running = false;
+    }
+}
@@ -0,0 +1,17 @@
+package com.n26.service;
+
+import java.util.TimeZone;
+
+/**
+ * Reads the clock on every call. Used when no cached time source is available.
+ */
+public class SystemTimeSource implements TimeSource {
+    //Resolved once, TimeZone.getDefault() clones the zone on every call
+    private final TimeZone zone = TimeZone.getDefault();
+
+    @Override
+    public long currentTimeMillis() {
+        long now = System.currentTimeMillis();
+        return now + zone.getOffset(now);
+    }
+}
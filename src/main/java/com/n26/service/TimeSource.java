@@ -0,0 +1,18 @@
+package com.n26.service;
+
+/**
+ * Source of "now" for the hot path. Values are epoch based on the local wall clock,
+ * which BeanConfig pins to UTC, so they line up with transaction timestamps read as UTC.
+ */
+public interface TimeSource {
+    long currentTimeMillis();
+
+    default long currentTimeSeconds() {
+        return currentTimeMillis() / 1000;
+    }
+
+    //Reads the clock itself, for the rare cases where a slightly stale value would give a wrong answer
+    default long preciseTimeMillis() {
+        return currentTimeMillis();
+    }
+}
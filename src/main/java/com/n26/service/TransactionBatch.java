@@ -0,0 +1,19 @@
+package com.n26.service;
+
+import com.n26.dto.TransactionResult;
+import com.n26.model.Transaction;
+
+/**
+ * Adds many transactions to the statistics at once, see {@link TransactionService#newBatch()}. Each one is
+ * validated like a single transaction, while runs of accepted ones are applied together.
+ * A batch is meant for a single thread; {@link #close()} applies what is still pending.
+ */
+public interface TransactionBatch extends AutoCloseable {
+    TransactionResult add(Transaction transaction);
+
+    //For callers that already hold the scaled amount and carry neither a merchant nor an id
+    TransactionResult add(long timestampMillis, long amount);
+
+    @Override
+    void close();
+}
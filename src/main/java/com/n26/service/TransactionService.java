@@ -1,19 +1,38 @@
 package com.n26.service;
 
+import com.n26.dto.EvictionStatisticsDto;
+import com.n26.dto.GroupedStatisticsDto;
+import com.n26.dto.IngestStatisticsDto;
+import com.n26.dto.PercentileStatisticsDto;
 import com.n26.dto.StatisticsDto;
+import com.n26.dto.StatisticsSnapshotDto;
+import com.n26.dto.TransactionCountDto;
 import com.n26.dto.TransactionDto;
+import com.n26.dto.TransactionResult;
+import com.n26.exception.AmountOutOfRangeValidationException;
 import com.n26.exception.FutureDateValidationException;
 import com.n26.exception.NotWithInRangeValidationException;
+import com.n26.exception.UnsupportedGroupException;
+import com.n26.exception.UnsupportedWindowException;
+import com.n26.model.StatisticsPoints;
 import com.n26.model.Transaction;
 
-import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-
 public interface TransactionService {
     StatisticsDto getStatistics();
-    boolean addTransaction(TransactionDto transactionDto) throws NotWithInRangeValidationException, FutureDateValidationException;
+    StatisticsDto getStatistics(int windowSeconds) throws UnsupportedWindowException;
+    byte[] getStatisticsJson();
+    StatisticsPoints getStatisticsSeries(int stepSeconds, int windowSeconds) throws UnsupportedWindowException;
+    GroupedStatisticsDto getGroupedStatistics(String groupBy) throws UnsupportedGroupException;
+    PercentileStatisticsDto getPercentileStatistics();
+    StatisticsSnapshotDto getStatisticsSnapshot();
+    EvictionStatisticsDto getEvictionStatistics();
+    IngestStatisticsDto getIngestStatistics();
+    boolean addTransaction(TransactionDto transactionDto) throws NotWithInRangeValidationException, FutureDateValidationException, AmountOutOfRangeValidationException;
+    TransactionResult addTransaction(Transaction transaction);
+    TransactionBatch newBatch();
     boolean deleteAllTransactions();
-    ConcurrentHashMap<Long, List<Transaction>> getTransactionStore();
     int getInterval();
     long getTransactionSize();
+    long getWindowTransactionSize();
+    TransactionCountDto getTransactionCount();
 }
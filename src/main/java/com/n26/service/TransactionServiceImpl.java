@@ -1,43 +1,192 @@
 package com.n26.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.n26.config.JacksonObjectMapperConfiguration;
+import com.n26.dto.EvictionStatisticsDto;
+import com.n26.dto.GroupedStatisticsDto;
+import com.n26.dto.IngestStatisticsDto;
+import com.n26.dto.PercentileStatisticsDto;
 import com.n26.dto.StatisticsDto;
+import com.n26.dto.StatisticsSnapshotDto;
+import com.n26.dto.TransactionCountDto;
 import com.n26.dto.TransactionDto;
+import com.n26.dto.TransactionResult;
+import com.n26.exception.AmountOutOfRangeValidationException;
 import com.n26.exception.FutureDateValidationException;
 import com.n26.exception.NotWithInRangeValidationException;
+import com.n26.exception.UnsupportedGroupException;
+import com.n26.exception.UnsupportedWindowException;
+import com.n26.model.EncodedStatistics;
+import com.n26.model.StatisticsPoints;
+import com.n26.model.StatisticsSnapshot;
 import com.n26.model.Transaction;
+import com.n26.store.DimensionStatistics;
+import com.n26.store.ExactSumAdder;
+import com.n26.store.IngestRingBuffer;
+import com.n26.store.QuantileSketch;
+import com.n26.store.SlidingWindowStatistics;
+import com.n26.store.StatisticsBatch;
+import com.n26.store.StatisticsBucket;
+import com.n26.store.StatisticsSeries;
+import com.n26.store.TransactionIdDeduplicator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.math.BigDecimal;
-import java.time.LocalDateTime;
 import java.time.ZoneOffset;
-import java.util.ArrayList;
-import java.util.DoubleSummaryStatistics;
-import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class TransactionServiceImpl implements TransactionService{
     private static final Logger log = LoggerFactory.getLogger(TransactionServiceImpl.class);
     @Value("${n26.statistics-interval}")
     protected int interval;
+    //When positive, statistics are precomputed in the background and may be this many ms stale
+    @Value("${n26.statistics-refresh-ms:0}")
+    protected long refreshMs;
+    //Width of a time bucket. Expiry is exact to the millisecond either way, wider buckets leave fewer of them to read
+    @Value("${n26.statistics-granularity-ms:100}")
+    protected int granularityMs;
+    //When positive, a low priority thread evicts expired buckets every N ms instead of leaving it to the next request
+    @Value("${n26.statistics-eviction-ms:0}")
+    protected long evictionMs;
+    //When positive, validated transactions are queued and applied by a single writer thread, and a full queue answers 503
+    @Value("${n26.ingest-queue-size:0}")
+    protected int ingestQueueSize;
+    //Longest window served on request, windows beyond the interval are read from per-second and per-minute rollups
+    @Value("${n26.statistics-max-window:3600}")
+    protected int maxWindow;
+    //Merchants tracked exactly for GET /statistics?groupBy=merchant, the rest are aggregated as other. 0 disables grouping
+    @Value("${n26.statistics-top-k:100}")
+    protected int topK;
+    //Expected transaction ids per second of timestamps, beyond it retries are caught less reliably. 0 disables deduplication
+    @Value("${n26.dedup-ids-per-second:10000}")
+    protected int dedupIdsPerSecond;
+    //Chance that a transaction with a new id is taken for a retry and not counted
+    @Value("${n26.dedup-false-positive-rate:0.001}")
+    protected double dedupFalsePositiveRate;
 
-    //ConcurrentHashMap for thread safety
-    private ConcurrentHashMap<Long, List<Transaction>> transactionStore;
+    //Allocated by init() once the settings are injected
+    //One preallocated bucket per tick of the window plus running totals, so memory does not grow with volume
+    private SlidingWindowStatistics windowStatistics;
+    //Null when grouping is disabled
+    private DimensionStatistics merchantStatistics;
+    //Null when deduplication is disabled
+    private TransactionIdDeduplicator deduplicator;
+
+    //Falls back to reading the clock when no cached time source is in the context
+    private TimeSource timeSource = new SystemTimeSource();
+
+    //Falls back to a mapper configured like the application's when constructed outside the context
+    private ObjectMapper objectMapper = JacksonObjectMapperConfiguration.configure(new ObjectMapper());
+
+    //Last statistics encoded, reused until the window version changes
+    private volatile EncodedStatistics encodedStatistics;
+    private volatile StatisticsSnapshot snapshot;
+    private ScheduledExecutorService snapshotScheduler;
+    private ScheduledExecutorService evictionScheduler;
+    private IngestRingBuffer ingestQueue;
+    private IngestWriter ingestWriter;
 
     public TransactionServiceImpl(){
-        transactionStore = new ConcurrentHashMap<>();
         if(interval == 0)
             interval = 60;
+        if(granularityMs == 0)
+            granularityMs = 100;
+        if(maxWindow == 0)
+            maxWindow = 3600;
+        if(topK == 0)
+            topK = 100;
+        if(dedupIdsPerSecond == 0)
+            dedupIdsPerSecond = 10000;
+        if(dedupFalsePositiveRate == 0)
+            dedupFalsePositiveRate = 0.001;
+    }
+
+    //The settings are injected after construction, so nothing is sized before they are known
+    @PostConstruct
+    public void init(){
+        windowStatistics = new SlidingWindowStatistics(interval, granularityMs, maxWindow);
+        encodedStatistics = null;
+        merchantStatistics = topK > 0 ? new DimensionStatistics(interval, topK) : null;
+        deduplicator = dedupIdsPerSecond > 0 ? new TransactionIdDeduplicator(interval, dedupIdsPerSecond, dedupFalsePositiveRate) : null;
+
+        if(refreshMs > 0){
+            refreshSnapshot();
+            snapshotScheduler = newDaemonScheduler("statistics-snapshot", Thread.NORM_PRIORITY);
+            snapshotScheduler.scheduleAtFixedRate(this::refreshSnapshot, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+        }
+        if(evictionMs > 0){
+            evictionScheduler = newDaemonScheduler("statistics-evictor", Thread.MIN_PRIORITY);
+            evictionScheduler.scheduleAtFixedRate(this::evictExpired, evictionMs, evictionMs, TimeUnit.MILLISECONDS);
+        }
+        if(ingestQueueSize > 0){
+            ingestQueue = new IngestRingBuffer(ingestQueueSize);
+            ingestWriter = new IngestWriter(ingestQueue, windowStatistics, timeSource);
+            Thread writerThread = new Thread(ingestWriter, "ingest-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    @Autowired(required = false)
+    public void setTimeSource(TimeSource timeSource){
+        this.timeSource = timeSource;
+    }
+
+    @Autowired(required = false)
+    public void setObjectMapper(ObjectMapper objectMapper){
+        this.objectMapper = objectMapper;
+    }
+
+    @PreDestroy
+    public void destroy(){
+        if(snapshotScheduler != null)
+            snapshotScheduler.shutdownNow();
+        if(evictionScheduler != null)
+            evictionScheduler.shutdownNow();
+        if(ingestWriter != null)
+            ingestWriter.stop();
+    }
+
+    private static ScheduledExecutorService newDaemonScheduler(String name, int priority) {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        });
+    }
+
+    private void evictExpired() {
+        try {
+            windowStatistics.advance(timeSource.currentTimeMillis());
+        } catch (Exception e) {
+            //An exception would cancel the schedule, requests still evict on their own
+            log.error("Evicting expired buckets failed", e);
+        }
+    }
+
+    @Override
+    public EvictionStatisticsDto getEvictionStatistics() {
+        return new EvictionStatisticsDto(evictionMs, windowStatistics.getEvictedBuckets(), windowStatistics.getEvictedTransactions());
     }
 
     @Override
-    public ConcurrentHashMap<Long, List<Transaction>> getTransactionStore(){
-        return this.transactionStore;
+    public IngestStatisticsDto getIngestStatistics() {
+        if(ingestQueue == null)
+            return new IngestStatisticsDto(0, 0, 0, 0, 0);
+        return new IngestStatisticsDto(ingestQueue.capacity(), ingestQueue.depth(), ingestWriter.getDrainLagNanos(), ingestQueue.drained(), ingestQueue.rejected());
     }
 
     @Override
@@ -47,76 +196,297 @@ public class TransactionServiceImpl implements TransactionService{
 
     @Override
     public long getTransactionSize() {
-        return  transactionStore.values().stream()
-                .flatMap(list -> list.stream())
-                .count();
+        //Kept up to date on insert and eviction, may still include buckets that expired since the last advance
+        return windowStatistics.getCount();
+    }
 
+    @Override
+    public long getWindowTransactionSize() {
+        windowStatistics.advance(timeSource.currentTimeMillis());
+        return windowStatistics.getCount();
+    }
+
+    @Override
+    public TransactionCountDto getTransactionCount() {
+        return new TransactionCountDto(getTransactionSize(), getWindowTransactionSize());
     }
 
     @Override
     public StatisticsDto getStatistics() {
-            //Now
-            long endTime = LocalDateTime.now().toInstant(ZoneOffset.UTC).toEpochMilli();
-            //interval seconds ago
-            long startTime = endTime - (interval * 1000);
-            long requestTimeStampSeconds = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
-            List<Transaction> transactionsWithInInterval = new ArrayList<>();
-            //We use range instead of traditional for-loop
-            IntStream.rangeClosed(0, interval).forEach(count -> {
-                List<Transaction> existing = transactionStore.get(requestTimeStampSeconds - count);
-                if (existing != null) {
-                    //We futher filter as some might have expired based on milliseconds
-                    transactionsWithInInterval.addAll(existing.stream()
-                            .filter(transaction -> {
-                                long transactionTimeMills = transaction.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli();
-                                return (transactionTimeMills <= endTime) && (transactionTimeMills >= startTime);
-                            }).collect(Collectors.toList()));
-                }
-            });
-
-            //Luckily we have stats utility in java util
-            if (transactionsWithInInterval.size() > 0) {
-                DoubleSummaryStatistics doubleSummaryStatistics = transactionsWithInInterval.stream()
-                        .collect(Collectors.summarizingDouble(t -> t.getAmount().setScale(2, BigDecimal.ROUND_HALF_UP).doubleValue()));
+        StatisticsSnapshot current = snapshot;
+        if(current != null)
+            return current.getStatistics();
+        return encodeStatistics().getStatistics();
+    }
+
+    @Override
+    public StatisticsDto getStatistics(int windowSeconds) throws UnsupportedWindowException {
+        if(windowSeconds <= 0 || windowSeconds > windowStatistics.getMaxWindowSeconds())
+            throw new UnsupportedWindowException("Window must be between 1s and " + windowStatistics.getMaxWindowSeconds() + "s");
+        //The interval itself is cached per version
+        if(windowSeconds == interval)
+            return getStatistics();
+        return toStatistics(windowStatistics.aggregate(windowSeconds * 1000L, timeSource.currentTimeMillis()));
+    }
+
+    @Override
+    public StatisticsPoints getStatisticsSeries(int stepSeconds, int windowSeconds) throws UnsupportedWindowException {
+        if(windowSeconds <= 0 || windowSeconds > windowStatistics.getMaxWindowSeconds())
+            throw new UnsupportedWindowException("Window must be between 1s and " + windowStatistics.getMaxWindowSeconds() + "s");
+        if(stepSeconds <= 0 || stepSeconds > windowSeconds)
+            throw new UnsupportedWindowException("Step must be between 1s and the window");
+        long nowInMillis = timeSource.currentTimeMillis();
+        long stepMillis = stepSeconds * 1000L;
+        //Points are aligned to whole steps, the first one also covers the partially expired part of the window
+        long firstStep = Math.floorDiv(nowInMillis - windowSeconds * 1000L, stepMillis);
+        StatisticsSeries series = new StatisticsSeries(firstStep * stepMillis, stepMillis, (int) (Math.floorDiv(nowInMillis, stepMillis) - firstStep + 1));
+        windowStatistics.series(series, nowInMillis);
+        return series;
+    }
+
+    @Override
+    public GroupedStatisticsDto getGroupedStatistics(String groupBy) throws UnsupportedGroupException {
+        if(!"merchant".equals(groupBy) || merchantStatistics == null)
+            throw new UnsupportedGroupException("Statistics can only be grouped by merchant");
+        Map<String, StatisticsBucket> top = new LinkedHashMap<>();
+        StatisticsBucket other = merchantStatistics.aggregate(timeSource.currentTimeMillis(), top);
+        Map<String, StatisticsDto> topStatistics = new LinkedHashMap<>();
+        top.forEach((merchant, totals) -> topStatistics.put(merchant, toStatistics(totals)));
+        return new GroupedStatisticsDto(groupBy, topStatistics, toStatistics(other));
+    }
+
+    private static StatisticsDto toStatistics(StatisticsBucket totals) {
+        return toStatistics(totals.getCount(), totals.getSum(), totals.getMax(), totals.getMin());
+    }
+
+    @Override
+    public PercentileStatisticsDto getPercentileStatistics() {
+        long[] counts = QuantileSketch.newCounts();
+        long count = windowStatistics.mergeSketches(counts, timeSource.currentTimeMillis());
+        return new PercentileStatisticsDto(
+                Transaction.toBigDecimal(QuantileSketch.quantile(counts, count, 0.50)),
+                Transaction.toBigDecimal(QuantileSketch.quantile(counts, count, 0.95)),
+                Transaction.toBigDecimal(QuantileSketch.quantile(counts, count, 0.99)),
+                QuantileSketch.RELATIVE_ACCURACY, count);
+    }
+
+    @Override
+    public byte[] getStatisticsJson() {
+        StatisticsSnapshot current = snapshot;
+        if(current != null)
+            return current.getJson();
+        return encodeStatistics().getJson();
+    }
+
+    @Override
+    public StatisticsSnapshotDto getStatisticsSnapshot() {
+        StatisticsSnapshot current = snapshot;
+        if(current == null){
+            long start = System.nanoTime();
+            StatisticsDto statistics = encodeStatistics().getStatistics();
+            return new StatisticsSnapshotDto(refreshMs, 0, System.nanoTime() - start, statistics);
+        }
+        return new StatisticsSnapshotDto(refreshMs, timeSource.currentTimeMillis() - current.getCreatedAtMillis(), current.getRefreshNanos(), current.getStatistics());
+    }
+
+    private void refreshSnapshot() {
+        try {
+            long start = System.nanoTime();
+            EncodedStatistics statistics = encodeStatistics();
+            snapshot = new StatisticsSnapshot(statistics.getStatistics(), statistics.getJson(), timeSource.currentTimeMillis(), System.nanoTime() - start);
+        } catch (Exception e) {
+            //An exception would cancel the schedule, so keep serving the previous snapshot
+            log.error("Statistics snapshot refresh failed", e);
+        }
+    }
+
+    /**
+     * Returns the statistics of the current window, computing and serializing them only when the window changed
+     * since they were last encoded.
+     */
+    private EncodedStatistics encodeStatistics() {
+        //Evicts the buckets that are entirely older than the window, at most once per tick
+        windowStatistics.advance(timeSource.currentTimeMillis());
+        //Read before the totals, so a change racing with the computation bumps the version past the cached one
+        long version = windowStatistics.getVersion();
+        EncodedStatistics cached = encodedStatistics;
+        if(cached != null && cached.getVersion() == version)
+            return cached;
+
+        StatisticsDto statistics = computeStatistics();
+        try {
+            cached = new EncodedStatistics(version, statistics, objectMapper.writeValueAsBytes(statistics));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Statistics could not be serialized", e);
+        }
+        encodedStatistics = cached;
+        return cached;
+    }
+
+    private StatisticsDto computeStatistics() {
+            return toStatistics(windowStatistics.getCount(), windowStatistics.getSum(), windowStatistics.getMax(), windowStatistics.getMin());
+    }
+
+    private static StatisticsDto toStatistics(long count, ExactSumAdder totalSum, long max, long min) {
+            if (count > 0) {
+                //Amounts are exact cents, so only the average needs rounding
+                BigDecimal sum = totalSum.toBigDecimal(Transaction.AMOUNT_SCALE);
                 return new StatisticsDto(
-                        new BigDecimal(doubleSummaryStatistics.getSum()).setScale(2, BigDecimal.ROUND_HALF_UP),
-                        new BigDecimal(doubleSummaryStatistics.getAverage()).setScale(2, BigDecimal.ROUND_HALF_UP),
-                        new BigDecimal(doubleSummaryStatistics.getMax()).setScale(2, BigDecimal.ROUND_HALF_UP),
-                        new BigDecimal(doubleSummaryStatistics.getMin()).setScale(2, BigDecimal.ROUND_HALF_UP),
-                        doubleSummaryStatistics.getCount());
+                        sum,
+                        sum.divide(BigDecimal.valueOf(count), 2, BigDecimal.ROUND_HALF_UP),
+                        Transaction.toBigDecimal(max),
+                        Transaction.toBigDecimal(min),
+                        count);
             } else {
                 return new StatisticsDto(new BigDecimal(0.00).setScale(2), new BigDecimal(0.00).setScale(2), new BigDecimal(0.00).setScale(2), new BigDecimal(0.00).setScale(2), 0);
             }
     }
 
     @Override
-    public boolean addTransaction(TransactionDto transactionDto) throws NotWithInRangeValidationException, FutureDateValidationException {
-        final Transaction transaction = new Transaction(transactionDto.getAmount(), transactionDto.getTimestamp());
-
-        long timeStampInSeconds = transaction.getTimestamp().toEpochSecond(ZoneOffset.UTC);
-        long differenceInSeconds = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) - timeStampInSeconds;
-
-        //Date in the future
-        if( differenceInSeconds < 0 ){
+    public boolean addTransaction(TransactionDto transactionDto) throws NotWithInRangeValidationException, FutureDateValidationException, AmountOutOfRangeValidationException {
+        //Kept for callers that rely on the validation exceptions
+        TransactionResult result = addTransaction(toTransaction(transactionDto));
+        if(result == TransactionResult.FUTURE)
             throw new FutureDateValidationException("TimeStamp cannot be greater than current time");
-        }else if(differenceInSeconds >= interval){
+        else if(result == TransactionResult.TOO_OLD)
             throw new NotWithInRangeValidationException("TimeStamp must be within last "+interval+"s");
+        return result != TransactionResult.REJECTED;
+    }
+
+    @Override
+    public TransactionResult addTransaction(Transaction transaction) {
+        long nowInMillis = currentTimeFor(transaction.getTimestampMillis());
+        TransactionResult result = validateTimestamp(transaction.getTimestampMillis(), nowInMillis);
+        if(result != TransactionResult.CREATED)
+            return result;
+
+        if(ingestQueue != null){
+            //The id is only added once queued, so a transaction turned away by a full queue can be retried
+            if(hasTransactionId(transaction) && deduplicator.mightContain(transaction.getTransactionId(), transaction.getTimestampMillis(), nowInMillis))
+                return TransactionResult.DUPLICATE;
+            //Counted by the queue as rejected, see getIngestStatistics
+            if(!ingestQueue.offer(transaction.getTimestampMillis(), transaction.getAmount()))
+                return TransactionResult.REJECTED;
+            if(hasTransactionId(transaction))
+                deduplicator.add(transaction.getTransactionId(), transaction.getTimestampMillis(), nowInMillis);
+            //The queue only carries the amount, so the merchant is counted on accept
+            addMerchant(transaction, nowInMillis);
+            return TransactionResult.CREATED;
         }
+        if(isDuplicate(transaction, nowInMillis))
+            return TransactionResult.DUPLICATE;
+        //The tick can only have been evicted in between when the timestamp is right at the edge of the window
+        if(!windowStatistics.add(transaction.getTimestampMillis(), transaction.getAmount(), nowInMillis))
+            return TransactionResult.TOO_OLD;
+        addMerchant(transaction, nowInMillis);
+        return TransactionResult.CREATED;
+    }
+
+    @Override
+    public TransactionBatch newBatch() {
+        StatisticsBatch batch = new StatisticsBatch(windowStatistics);
+        return new TransactionBatch() {
+            @Override
+            public TransactionResult add(Transaction transaction) {
+                return addTransaction(transaction, batch);
+            }
 
-        List<Transaction> existing = transactionStore.get(timeStampInSeconds);
-        if(existing == null){
-            existing = new ArrayList<>();
+            @Override
+            public TransactionResult add(long timestampMillis, long amount) {
+                return addTransaction(timestampMillis, amount, batch);
+            }
+
+            @Override
+            public void close() {
+                batch.close();
+            }
+        };
+    }
+
+    private TransactionResult addTransaction(Transaction transaction, StatisticsBatch batch) {
+        long nowInMillis = currentTimeFor(transaction.getTimestampMillis());
+        TransactionResult result = validateTimestamp(transaction.getTimestampMillis(), nowInMillis);
+        if(result != TransactionResult.CREATED)
+            return result;
+        if(isDuplicate(transaction, nowInMillis))
+            return TransactionResult.DUPLICATE;
+        batch.add(transaction.getTimestampMillis(), transaction.getAmount(), nowInMillis);
+        addMerchant(transaction, nowInMillis);
+        return result;
+    }
+
+    private boolean hasTransactionId(Transaction transaction) {
+        return transaction.getTransactionId() != null && deduplicator != null;
+    }
+
+    //Adds the id, so of two transactions with the same id and second only the first is counted
+    private boolean isDuplicate(Transaction transaction, long nowInMillis) {
+        return hasTransactionId(transaction) && !deduplicator.add(transaction.getTransactionId(), transaction.getTimestampMillis(), nowInMillis);
+    }
+
+    private void addMerchant(Transaction transaction, long nowInMillis) {
+        if(transaction.getMerchant() != null && merchantStatistics != null)
+            merchantStatistics.add(transaction.getMerchant(), transaction.getTimestampMillis(), transaction.getAmount(), nowInMillis);
+    }
+
+    private TransactionResult addTransaction(long timestampMillis, long amount, StatisticsBatch batch) {
+        long nowInMillis = currentTimeFor(timestampMillis);
+        TransactionResult result = validateTimestamp(timestampMillis, nowInMillis);
+        if(result == TransactionResult.CREATED)
+            batch.add(timestampMillis, amount, nowInMillis);
+        return result;
+    }
+
+    private static Transaction toTransaction(TransactionDto transactionDto) throws AmountOutOfRangeValidationException {
+        final long amount;
+        try {
+            amount = Transaction.toScaledAmount(transactionDto.getAmount());
+        } catch (ArithmeticException e) {
+            throw new AmountOutOfRangeValidationException("Amount is too large", e);
         }
+        return new Transaction(amount, transactionDto.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli(), transactionDto.getMerchant(), transactionDto.getTransactionId());
+    }
 
-        existing.add(transaction);
-        transactionStore.put(timeStampInSeconds, existing);
-        log.info("Transaction added successfully");
-        return true;
+    /**
+     * @return the current time to validate the timestamp against and to add it with
+     */
+    private long currentTimeFor(long timeStampInMillis) {
+        //Read once, so validation and the window agree on now
+        long nowInMillis = timeSource.currentTimeMillis();
+        if( timeStampInMillis > nowInMillis ){
+            //The cached clock may lag a tick behind, so confirm with a fresh clock read before rejecting
+            nowInMillis = timeSource.preciseTimeMillis();
+        }
+        return nowInMillis;
+    }
+
+    /**
+     * @return CREATED when the timestamp lies within the window ending at nowInMillis
+     */
+    private TransactionResult validateTimestamp(long timeStampInMillis, long nowInMillis) {
+        long differenceInMillis = nowInMillis - timeStampInMillis;
+
+        //Date in the future
+        if( differenceInMillis < 0 ){
+            return TransactionResult.FUTURE;
+        }else if(differenceInMillis > interval * 1000L){
+            return TransactionResult.TOO_OLD;
+        }
+        return TransactionResult.CREATED;
     }
 
     @Override
     public boolean deleteAllTransactions() {
-        transactionStore.clear();
+        //Transactions accepted before the delete must not reappear after it
+        if(ingestWriter != null && !ingestWriter.awaitApplied(1000))
+            log.warn("Ingest queue did not drain before clearing");
+        windowStatistics.clear();
+        if(merchantStatistics != null)
+            merchantStatistics.clear();
+        if(deduplicator != null)
+            deduplicator.clear();
+        if(snapshot != null)
+            refreshSnapshot();
         return true;
     }
 }
@@ -0,0 +1,365 @@
+package com.n26.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Window statistics per key of one dimension, such as the merchant, in memory bounded by the capacity rather than
+ * by the number of distinct keys.
+ * <p>
+ * Up to capacity keys are tracked with exact per-second buckets; everything else is aggregated as other.
+ * A count-min sketch estimates each key's transactions in the window, and an untracked key takes over the slot
+ * of the tracked key with the lowest estimate once its own is higher. Estimates of both sides carry the same
+ * collision noise, so the many light keys only ever compete with each other for the lowest slot. The displaced key's
+ * buckets are merged into other, so the tracked keys plus other always add up to every keyed transaction.
+ * A key's statistics are exact from the moment it is tracked, earlier transactions stay in other.
+ * <p>
+ * Adding never takes a lock: the sketch is counted with atomic increments and a tracked key's slot is entered like
+ * a {@link StatisticsBucket}. Only admitting a key and expiring a second synchronize. The tracked keys sit in a min-heap
+ * by estimate, so the lowest one is found in O(log capacity), and a key whose estimate is not above the lowest seen
+ * goes straight to other.
+ */
+public class DimensionStatistics {
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH_BITS = 10;
+    //Overestimates a key by at most e / 1024 of the window's keyed transactions, with probability 1 - e^-4
+    private static final int SKETCH_WIDTH = 1 << SKETCH_WIDTH_BITS;
+
+    private final int interval;
+    private final int capacity;
+    private final int seconds;
+    //One count-min frame per second of the window, and their running sum
+    private final AtomicIntegerArray[] sketchFrames;
+    private final AtomicIntegerArray sketch = new AtomicIntegerArray(SKETCH_DEPTH * SKETCH_WIDTH);
+    private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+    //Key of each slot, null while the slot is handed to another key
+    private final AtomicReferenceArray<String> keys;
+    private final LongAdder[] writers;
+    //Transactions of each tracked key still in the window
+    private final AtomicLongArray counts;
+    private final StatisticsRingBuffer[] buckets;
+    private final StatisticsRingBuffer other;
+    //Guarded by this: the hashes of each slot's key, and the slots as a min-heap of their estimates
+    private final long[] hashes1;
+    private final long[] hashes2;
+    private final int[] heap;
+    private final long[] heapEstimates;
+    private int tracked;
+    //Estimates only grow between expiries, so this never exceeds the lowest tracked estimate
+    private volatile long lowestEstimate = -1;
+    //Every second up to and including this one has expired
+    private volatile long expiredThrough = Long.MIN_VALUE;
+
+    public DimensionStatistics(int interval, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("At least one key must be tracked");
+        }
+        this.interval = interval;
+        this.capacity = capacity;
+        //Every second of the window plus the partially expired one
+        this.seconds = interval + 2;
+        this.sketchFrames = new AtomicIntegerArray[seconds];
+        for (int i = 0; i < seconds; i++) {
+            sketchFrames[i] = new AtomicIntegerArray(SKETCH_DEPTH * SKETCH_WIDTH);
+        }
+        this.keys = new AtomicReferenceArray<>(capacity);
+        this.writers = new LongAdder[capacity];
+        this.counts = new AtomicLongArray(capacity);
+        this.buckets = new StatisticsRingBuffer[capacity];
+        for (int i = 0; i < capacity; i++) {
+            writers[i] = new LongAdder();
+            buckets[i] = new StatisticsRingBuffer(seconds - 1);
+        }
+        this.other = new StatisticsRingBuffer(seconds - 1);
+        this.hashes1 = new long[capacity];
+        this.hashes2 = new long[capacity];
+        this.heap = new int[capacity];
+        this.heapEstimates = new long[capacity];
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return false when the second of the timestamp already expired and the amount was dropped
+     */
+    public boolean add(String key, long timestampMillis, long amount, long nowMillis) {
+        advance(nowMillis);
+        long second = Math.floorDiv(timestampMillis, 1000);
+        long expired = expiredThrough;
+        if (second <= expired || second > expired + seconds) {
+            return false;
+        }
+        long hash1 = Hashing.hash1(key);
+        long hash2 = Hashing.hash2(key);
+        long estimate = count(second, hash1, hash2);
+        while (true) {
+            Integer slot = slots.get(key);
+            if (slot == null && estimate > lowestEstimate) {
+                slot = admit(key, hash1, hash2, estimate);
+            }
+            if (slot == null) {
+                other.add(second, amount);
+                return true;
+            }
+            //Fails only when the key was displaced since it was looked up
+            if (addTracked(slot, key, second, amount)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean addTracked(int slot, String key, long second, long amount) {
+        writers[slot].increment();
+        try {
+            if (!key.equals(keys.get(slot))) {
+                return false;
+            }
+            buckets[slot].add(second, amount);
+            counts.incrementAndGet(slot);
+            return true;
+        } finally {
+            writers[slot].decrement();
+        }
+    }
+
+    /**
+     * Puts the window's aggregate of every tracked key that has transactions into top, most transactions first.
+     * Like the percentiles, a second stays in until the last of it has expired.
+     * @return the aggregate of all other keys
+     */
+    public synchronized StatisticsBucket aggregate(long nowMillis, Map<String, StatisticsBucket> top) {
+        advance(nowMillis);
+        long nowSecond = Math.floorDiv(nowMillis, 1000);
+        List<Integer> trackedSlots = new ArrayList<>(tracked);
+        for (int slot = 0; slot < tracked; slot++) {
+            trackedSlots.add(slot);
+        }
+        trackedSlots.sort((a, b) -> Long.compare(counts.get(b), counts.get(a)));
+        for (int slot : trackedSlots) {
+            String key = keys.get(slot);
+            if (key != null && counts.get(slot) > 0) {
+                top.put(key, buckets[slot].aggregate(expiredThrough, nowSecond));
+            }
+        }
+        return other.aggregate(expiredThrough, nowSecond);
+    }
+
+    public synchronized void clear() {
+        for (int slot = 0; slot < tracked; slot++) {
+            release(slot);
+            buckets[slot].clear();
+            counts.set(slot, 0);
+        }
+        slots.clear();
+        tracked = 0;
+        lowestEstimate = -1;
+        for (AtomicIntegerArray frame : sketchFrames) {
+            for (int cell = 0; cell < frame.length(); cell++) {
+                frame.set(cell, 0);
+            }
+        }
+        for (int cell = 0; cell < sketch.length(); cell++) {
+            sketch.set(cell, 0);
+        }
+        other.clear();
+    }
+
+    /**
+     * Counts the transaction in the sketch.
+     * @return the estimated number of transactions of the key in the window, including this one
+     */
+    private long count(long second, long hash1, long hash2) {
+        AtomicIntegerArray frame = sketchFrames[indexOf(second)];
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < SKETCH_DEPTH; row++) {
+            int cell = cellOf(hash1, hash2, row);
+            frame.incrementAndGet(cell);
+            estimate = Math.min(estimate, sketch.incrementAndGet(cell));
+        }
+        return estimate;
+    }
+
+    private long estimate(long hash1, long hash2) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < SKETCH_DEPTH; row++) {
+            estimate = Math.min(estimate, sketch.get(cellOf(hash1, hash2, row)));
+        }
+        return estimate;
+    }
+
+    //Double hashing over two 64-bit hashes, the top bits of hash1 + row * hash2 pick the row's cell
+    private static int cellOf(long hash1, long hash2, int row) {
+        return row * SKETCH_WIDTH + (int) ((hash1 + row * hash2) >>> (Long.SIZE - SKETCH_WIDTH_BITS));
+    }
+
+    /**
+     * Tracks the key in a free slot, or in place of the tracked key with the lowest estimate when its own is higher.
+     * @return null when the key stays untracked
+     */
+    private synchronized Integer admit(String key, long hash1, long hash2, long estimate) {
+        Integer slot = slots.get(key);
+        if (slot != null) {
+            return slot;
+        }
+        if (tracked < capacity) {
+            slot = tracked++;
+            heap[slot] = slot;
+            heapEstimates[slot] = estimate;
+            siftUp(slot);
+        } else {
+            if (estimate <= lowestTrackedEstimate()) {
+                return null;
+            }
+            slot = heap[0];
+            //The displaced key's transactions remain in the window as part of other
+            String displaced = keys.get(slot);
+            release(slot);
+            for (int i = 0; i < seconds; i++) {
+                StatisticsBucket bucket = buckets[slot].bucketAt(i);
+                StatisticsBucket target = bucket.getTick() > expiredThrough ? other.enter(bucket.getTick()) : null;
+                if (target != null) {
+                    try {
+                        bucket.mergeInto(target);
+                    } finally {
+                        target.exit();
+                    }
+                }
+            }
+            buckets[slot].clear();
+            counts.set(slot, 0);
+            slots.remove(displaced);
+            heapEstimates[0] = estimate;
+            siftDown(0);
+        }
+        hashes1[slot] = hash1;
+        hashes2[slot] = hash2;
+        keys.set(slot, key);
+        slots.put(key, slot);
+        if (tracked == capacity) {
+            lowestEstimate = heapEstimates[0];
+        }
+        return slot;
+    }
+
+    //Takes the key off the slot and waits for writers still adding to it
+    private void release(int slot) {
+        keys.set(slot, null);
+        while (writers[slot].sum() != 0) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Heap estimates are only refreshed on the way to the top. As estimates only grow between expiries a stale one is
+     * never too high, so the top is the lowest once its own estimate is current.
+     */
+    private long lowestTrackedEstimate() {
+        while (true) {
+            int slot = heap[0];
+            long current = estimate(hashes1[slot], hashes2[slot]);
+            if (current == heapEstimates[0]) {
+                lowestEstimate = current;
+                return current;
+            }
+            heapEstimates[0] = current;
+            siftDown(0);
+        }
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (heapEstimates[parent] <= heapEstimates[position]) {
+                return;
+            }
+            swap(parent, position);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int lowest = position;
+            for (int child = 2 * position + 1; child <= 2 * position + 2 && child < tracked; child++) {
+                if (heapEstimates[child] < heapEstimates[lowest]) {
+                    lowest = child;
+                }
+            }
+            if (lowest == position) {
+                return;
+            }
+            swap(lowest, position);
+            position = lowest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int slot = heap[a];
+        heap[a] = heap[b];
+        heap[b] = slot;
+        long estimate = heapEstimates[a];
+        heapEstimates[a] = heapEstimates[b];
+        heapEstimates[b] = estimate;
+    }
+
+    /**
+     * Expires every second that has completely left the window ending at nowMillis.
+     */
+    private void advance(long nowMillis) {
+        long expiredSecond = Math.floorDiv(nowMillis - interval * 1000L, 1000) - 1;
+        if (expiredSecond > expiredThrough) {
+            expire(expiredSecond);
+        }
+    }
+
+    private synchronized void expire(long expiredSecond) {
+        if (expiredSecond <= expiredThrough) {
+            return;
+        }
+        //Nothing older than a full ring is left, so a long pause only needs one pass over it
+        long fromSecond = expiredThrough == Long.MIN_VALUE ? expiredSecond + 1 : Math.max(expiredThrough + 1, expiredSecond - seconds + 1);
+        for (long second = fromSecond; second <= expiredSecond; second++) {
+            int index = indexOf(second);
+            //Taken out cell by cell, so increments racing the expiry stay in the frame and the sum alike
+            AtomicIntegerArray frame = sketchFrames[index];
+            for (int cell = 0; cell < frame.length(); cell++) {
+                int expired = frame.getAndSet(cell, 0);
+                if (expired != 0) {
+                    sketch.addAndGet(cell, -expired);
+                }
+            }
+            for (int slot = 0; slot < tracked; slot++) {
+                //The slot can only hold this second or, after a pause, an older one that expired as well
+                counts.addAndGet(slot, -buckets[slot].bucketAt(index).getCount());
+                buckets[slot].clear(index);
+            }
+            other.clear(index);
+        }
+        expiredThrough = expiredSecond;
+        //Estimates went down, so the heap is rebuilt from current ones
+        for (int position = 0; position < tracked; position++) {
+            int slot = heap[position];
+            heapEstimates[position] = estimate(hashes1[slot], hashes2[slot]);
+        }
+        for (int position = tracked / 2 - 1; position >= 0; position--) {
+            siftDown(position);
+        }
+        lowestEstimate = tracked == capacity ? heapEstimates[0] : -1;
+    }
+
+    private int indexOf(long second) {
+        return (int) Math.floorMod(second, (long) seconds);
+    }
+}
@@ -0,0 +1,58 @@
+package com.n26.store;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Striped sum of scaled long amounts that cannot overflow in practice.
+ * Each amount is split into its upper and lower 32 bits which are summed in separate
+ * adders, so a single cell only overflows after 2^31 maximal amounts. The exact value
+ * is high * 2^32 + low, recombined only when it is read.
+ */
+public class ExactSumAdder {
+    private final LongAdder high = new LongAdder();
+    private final LongAdder low = new LongAdder();
+
+    public void add(long amount) {
+        high.add(amount >> 32);
+        low.add(amount & 0xFFFFFFFFL);
+    }
+
+    //Adds a sum that was already split into halves by the caller
+    void add(long highSum, long lowSum) {
+        high.add(highSum);
+        low.add(lowSum);
+    }
+
+    public void add(ExactSumAdder other) {
+        high.add(other.high.sum());
+        low.add(other.low.sum());
+    }
+
+    public void subtract(ExactSumAdder other) {
+        high.add(-other.high.sum());
+        low.add(-other.low.sum());
+    }
+
+    public void reset() {
+        high.reset();
+        low.reset();
+    }
+
+    long highSum() {
+        return high.sum();
+    }
+
+    long lowSum() {
+        return low.sum();
+    }
+
+    public BigInteger sum() {
+        return BigInteger.valueOf(high.sum()).shiftLeft(32).add(BigInteger.valueOf(low.sum()));
+    }
+
+    public BigDecimal toBigDecimal(int scale) {
+        return new BigDecimal(sum(), scale);
+    }
+}
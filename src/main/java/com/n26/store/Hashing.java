@@ -0,0 +1,38 @@
+package com.n26.store;
+
+/**
+ * Two independent 64-bit hashes of a string for double hashing, shared by the transaction id filters and the
+ * dimension sketch. The chars are read in place, so hashing allocates nothing.
+ */
+final class Hashing {
+    private Hashing() {
+    }
+
+    //64-bit FNV-1a over the chars
+    static long hash1(CharSequence value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    //Second, independent hash with another seed and multiplier, never 0 so the positions hash1 + i * hash2 differ
+    static long hash2(CharSequence value) {
+        long hash = 0x84222325CBF29CE4L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash + value.charAt(i)) * 0x9E3779B97F4A7C15L;
+        }
+        return mix(hash) | 1;
+    }
+
+    //Finalizer of MurmurHash3's 64-bit variant
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+}
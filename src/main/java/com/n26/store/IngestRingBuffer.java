@@ -0,0 +1,121 @@
+package com.n26.store;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, preallocated queue of validated transactions between request threads and a single writer.
+ * Producers claim a sequence with a CAS on the tail, fill the slot's primitive fields and publish
+ * the slot by writing its sequence; the consumer reads slots in sequence order while they are published.
+ * Nothing is allocated per transaction, and a full queue rejects instead of blocking the producer.
+ */
+public class IngestRingBuffer {
+    /**
+     * Receives drained entries on the consumer thread.
+     */
+    public interface Consumer {
+        void accept(long timestampMillis, long amount, long enqueuedNanos);
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final long[] timestamps;
+    private final long[] amounts;
+    private final long[] enqueuedNanos;
+    //Sequence last published into each slot
+    private final AtomicLongArray published;
+
+    //Next sequence to claim
+    private final AtomicLong tail = new AtomicLong();
+    //Next sequence to consume, only written by the consumer
+    private volatile long head;
+    private final LongAdder rejected = new LongAdder();
+
+    //Rounded up to a power of two, so a slot index is a mask of the sequence
+    public IngestRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30, got " + capacity);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.timestamps = new long[size];
+        this.amounts = new long[size];
+        this.enqueuedNanos = new long[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * @return false when the queue is full and the transaction was not accepted
+     */
+    public boolean offer(long timestampMillis, long amount) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= capacity) {
+                rejected.increment();
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+
+        int index = (int) sequence & mask;
+        timestamps[index] = timestampMillis;
+        amounts[index] = amount;
+        enqueuedNanos[index] = System.nanoTime();
+        //Ordered store, the consumer that sees the sequence also sees the fields written before it
+        published.lazySet(index, sequence);
+        return true;
+    }
+
+    /**
+     * Hands up to max entries to the consumer in the order they were claimed. Must only be called by one thread.
+     * @return the number of entries drained
+     */
+    public int drain(Consumer consumer, int max) {
+        long sequence = head;
+        int drained = 0;
+        while (drained < max) {
+            int index = (int) sequence & mask;
+            if (published.get(index) != sequence) {
+                break;
+            }
+            long timestampMillis = timestamps[index];
+            long amount = amounts[index];
+            long enqueued = enqueuedNanos[index];
+            //Frees the slot once read and before it is applied, so a failing consumer never sees it again
+            head = ++sequence;
+            drained++;
+            consumer.accept(timestampMillis, amount, enqueued);
+        }
+        return drained;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    //Claimed but not yet drained, including entries still being written by their producer
+    public long depth() {
+        return Math.max(tail.get() - head, 0);
+    }
+
+    //Sequence the next offer will claim; every entry before it has been claimed
+    public long claimed() {
+        return tail.get();
+    }
+
+    public long drained() {
+        return head;
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+}
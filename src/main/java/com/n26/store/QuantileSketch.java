@@ -0,0 +1,124 @@
+package com.n26.store;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size, mergeable histogram of the scaled amounts of one second, on a log scale with relative accuracy
+ * {@link #RELATIVE_ACCURACY}. Positive amounts fall into bin k when gamma^(k-1) < amount <= gamma^k, negative ones
+ * mirror that below a bin for zero, so every long amount has a bin and the bins are ordered by amount.
+ * A bin is reported as 2 * gamma^k / (gamma + 1), which is within the relative accuracy of everything in it.
+ * <p>
+ * Adding is one log and one atomic increment into preallocated bins. Sketches are reused for later seconds:
+ * like {@link StatisticsBucket}, a writer enters before adding, and {@link #reset(long)} seals the sketch and
+ * waits for writers inside before zeroing it, so a late writer never lands in the next second.
+ */
+public class QuantileSketch {
+    public static final double RELATIVE_ACCURACY = 0.01;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    //Bins of one sign, enough for Long.MAX_VALUE
+    private static final int SIGNED_BINS = (int) Math.ceil(Math.log(Long.MAX_VALUE) / LOG_GAMMA) + 1;
+    private static final int ZERO = SIGNED_BINS;
+    static final int BINS = 2 * SIGNED_BINS + 1;
+    static final long UNASSIGNED = Long.MIN_VALUE;
+
+    private final AtomicLongArray bins = new AtomicLongArray(BINS);
+    private final LongAdder writers = new LongAdder();
+    private volatile long second = UNASSIGNED;
+    private volatile boolean sealed;
+
+    public long getSecond() {
+        return second;
+    }
+
+    /**
+     * @return false when the sketch no longer belongs to the second and the amount was dropped
+     */
+    boolean add(long second, long amount) {
+        writers.increment();
+        try {
+            //Checked after entering, so a reset that started earlier either waits for this writer or is seen by it
+            if (sealed || this.second != second) {
+                return false;
+            }
+            bins.incrementAndGet(binOf(amount));
+            return true;
+        } finally {
+            writers.decrement();
+        }
+    }
+
+    /**
+     * Empties the sketch and hands it to another second. Only called by one thread at a time.
+     */
+    void reset(long newSecond) {
+        sealed = true;
+        while (writers.sum() != 0) {
+            Thread.yield();
+        }
+        for (int i = 0; i < BINS; i++) {
+            bins.set(i, 0);
+        }
+        second = newSecond;
+        sealed = false;
+    }
+
+    /**
+     * Adds the bin counts to counts, which must have {@link #BINS} entries.
+     */
+    void mergeInto(long[] counts) {
+        for (int i = 0; i < BINS; i++) {
+            counts[i] += bins.get(i);
+        }
+    }
+
+    static int binOf(long amount) {
+        if (amount > 0) {
+            return ZERO + 1 + signedBinOf(amount);
+        } else if (amount < 0) {
+            //-Long.MIN_VALUE overflows, its neighbour shares the last bin anyway
+            return ZERO - 1 - signedBinOf(amount == Long.MIN_VALUE ? Long.MAX_VALUE : -amount);
+        }
+        return ZERO;
+    }
+
+    private static int signedBinOf(long magnitude) {
+        return Math.min(SIGNED_BINS - 1, (int) Math.ceil(Math.log(magnitude) / LOG_GAMMA));
+    }
+
+    static double valueOf(int bin) {
+        if (bin > ZERO) {
+            return representative(bin - ZERO - 1);
+        } else if (bin < ZERO) {
+            return -representative(ZERO - 1 - bin);
+        }
+        return 0;
+    }
+
+    private static double representative(int signedBin) {
+        return 2 * Math.pow(GAMMA, signedBin) / (GAMMA + 1);
+    }
+
+    /**
+     * The value at rank quantile * (total - 1) of merged bin counts, rounded to a scaled amount.
+     */
+    public static long quantile(long[] counts, long total, double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        double rank = quantile * (total - 1);
+        long seen = 0;
+        for (int bin = 0; bin < counts.length; bin++) {
+            seen += counts[bin];
+            if (seen > rank) {
+                return Math.round(valueOf(bin));
+            }
+        }
+        return Math.round(valueOf(counts.length - 1));
+    }
+
+    public static long[] newCounts() {
+        return new long[BINS];
+    }
+}
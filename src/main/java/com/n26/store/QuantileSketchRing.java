@@ -0,0 +1,74 @@
+package com.n26.store;
+
+/**
+ * One preallocated {@link QuantileSketch} per second of a window, plus one for the partially expired second and
+ * one for the second about to start. When a second expires its sketch is emptied and assigned to the next second
+ * landing on its slot, so every second of the window has its sketch before the first transaction arrives and
+ * adding never allocates.
+ */
+public class QuantileSketchRing {
+    private final QuantileSketch[] sketches;
+    //Every second up to and including this one has been reset
+    private long expiredThrough = Long.MIN_VALUE;
+
+    public QuantileSketchRing(int windowSeconds) {
+        sketches = new QuantileSketch[windowSeconds + 2];
+        for (int i = 0; i < sketches.length; i++) {
+            sketches[i] = new QuantileSketch();
+        }
+    }
+
+    /**
+     * @return false when the second has no sketch, because it expired or lies beyond the window
+     */
+    boolean add(long timestampMillis, long amount) {
+        long second = Math.floorDiv(timestampMillis, 1000);
+        return sketches[indexOf(second)].add(second, amount);
+    }
+
+    /**
+     * Hands the sketches of every second up to and including expiredSecond to the seconds that follow the window.
+     * Only called while holding the window's lock.
+     */
+    void expire(long expiredSecond) {
+        if (expiredSecond <= expiredThrough) {
+            return;
+        }
+        long fromSecond = expiredThrough == Long.MIN_VALUE || expiredSecond - expiredThrough > sketches.length
+                ? expiredSecond - sketches.length + 1
+                : expiredThrough + 1;
+        for (long second = fromSecond; second <= expiredSecond; second++) {
+            sketches[indexOf(second)].reset(second + sketches.length);
+        }
+        expiredThrough = expiredSecond;
+    }
+
+    /**
+     * Adds the bin counts of every second of the window ending in toSecond to counts.
+     * @return the number of amounts in counts afterwards
+     */
+    public long mergeInto(long[] counts, long toSecond) {
+        for (long second = toSecond - sketches.length + 1; second <= toSecond; second++) {
+            QuantileSketch sketch = sketches[indexOf(second)];
+            //Expired seconds were handed on, so only the window's seconds still match
+            if (sketch.getSecond() == second) {
+                sketch.mergeInto(counts);
+            }
+        }
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    void clear() {
+        for (QuantileSketch sketch : sketches) {
+            sketch.reset(sketch.getSecond());
+        }
+    }
+
+    private int indexOf(long second) {
+        return (int) Math.floorMod(second, (long) sketches.length);
+    }
+}
@@ -0,0 +1,428 @@
+package com.n26.store;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of the last interval seconds in scaled long amounts, kept next to the ring of time buckets.
+ * Writers add to their bucket and to the window totals without locking, and whenever
+ * the clock crosses into a new tick the expired buckets are sealed and subtracted.
+ * Reading the statistics is therefore O(1) and allocates nothing. Max and min live in a {@link StatisticsExtremes}
+ * tree over the ring's slots, so an eviction only rebuilds the path of its slot.
+ * <p>
+ * Buckets are granularityMillis wide and keep the totals of each of their milliseconds. The oldest
+ * bucket is expired a millisecond at a time from those, so a transaction leaves the statistics exactly
+ * interval seconds after its timestamp, while the ring, the rollup and the reads still work per bucket.
+ * A bucket is evicted whole once all of it is older than the window.
+ * Expired buckets are sealed in place and reset by the first writer of the next tick of their slot,
+ * and the totals of everything evicted so far are kept for monitoring.
+ * <p>
+ * Advancing is claimed with a CAS and never waits for writers. Threads that lose the claim carry on with the
+ * window as the winner leaves it; only a writer of a tick whose slot the winner has not evicted yet waits for it.
+ * <p>
+ * With a {@link StatisticsRollup}, expired buckets are folded into it instead of being dropped, so
+ * {@link #aggregate(long, long)} can also answer windows longer than the interval.
+ * Every amount is also added to the {@link QuantileSketch} of its second, for percentiles over the window.
+ */
+public class SlidingWindowStatistics {
+    private static final AtomicIntegerFieldUpdater<SlidingWindowStatistics> ADVANCING =
+            AtomicIntegerFieldUpdater.newUpdater(SlidingWindowStatistics.class, "advancing");
+
+    private final int interval;
+    private final long windowMillis;
+    private final int granularityMillis;
+    private final StatisticsRingBuffer ringBuffer;
+    //Null when no window longer than the interval is served
+    private final StatisticsRollup rollup;
+    private final QuantileSketchRing sketches;
+
+    private final ExactSumAdder sum = new ExactSumAdder();
+    private final LongAdder count = new LongAdder();
+    private final StatisticsExtremes extremes;
+    //Bumped after every change to the totals, so a reader holding an older version knows to recompute
+    private final LongAdder version = new LongAdder();
+
+    //Latest time the window was advanced to
+    private volatile long windowEndMillis = Long.MIN_VALUE;
+    //Latest time any caller asked the window to be advanced to
+    private final AtomicLong requestedEndMillis = new AtomicLong(Long.MIN_VALUE);
+    //1 while a thread holds the claim to advance the window
+    private volatile int advancing;
+    //Every millisecond up to and including this one has left the totals
+    private volatile long expiredThroughMillis = Long.MIN_VALUE;
+    //Every tick up to and including this one has been evicted, published once their buckets are
+    private volatile long evictedThrough = Long.MIN_VALUE;
+    //Milliseconds of the oldest bucket that expired, only used while holding the lock
+    private final StatisticsBucket expiring = new StatisticsBucket(StatisticsBucket.UNASSIGNED);
+
+    //Only written while holding the lock
+    private volatile long evictedBuckets;
+    private volatile long evictedTransactions;
+
+    public SlidingWindowStatistics(int interval) {
+        this(interval, 1000);
+    }
+
+    public SlidingWindowStatistics(int interval, int granularityMillis) {
+        this(interval, granularityMillis, interval);
+    }
+
+    /**
+     * @param maxWindowSeconds longest window {@link #aggregate(long, long)} answers, a rollup is kept when it exceeds the interval
+     */
+    public SlidingWindowStatistics(int interval, int granularityMillis, int maxWindowSeconds) {
+        if (granularityMillis <= 0 || (interval * 1000L) % granularityMillis != 0) {
+            throw new IllegalArgumentException("Granularity must divide the interval, got " + granularityMillis + "ms for " + interval + "s");
+        }
+        this.interval = interval;
+        this.windowMillis = interval * 1000L;
+        this.granularityMillis = granularityMillis;
+        this.ringBuffer = new StatisticsRingBuffer((int) (windowMillis / granularityMillis), granularityMillis);
+        this.extremes = new StatisticsExtremes(ringBuffer.capacity());
+        this.rollup = maxWindowSeconds > interval ? new StatisticsRollup(maxWindowSeconds) : null;
+        this.sketches = new QuantileSketchRing(interval);
+    }
+
+    /**
+     * Adds an amount to the tick it happened in.
+     * @return false when the tick is no longer part of the window
+     */
+    public boolean add(long timestampMillis, long amount, long nowMillis) {
+        advance(nowMillis);
+        long tick = Math.floorDiv(timestampMillis, granularityMillis);
+        if (!awaitSlot(timestampMillis, tick, nowMillis)) {
+            return false;
+        }
+        StatisticsBucket bucket = ringBuffer.enter(tick);
+        if (bucket == null) {
+            return false;
+        }
+        try {
+            //Checked after entering, so an expiry that started earlier either sees this writer or is seen by it
+            if (timestampMillis <= expiredThroughMillis) {
+                return false;
+            }
+            bucket.add(amount, (int) (timestampMillis - tick * granularityMillis));
+            sketches.add(timestampMillis, amount);
+            extremes.add(ringBuffer.indexOf(tick), amount, amount);
+            sum.add(amount);
+            count.increment();
+            version.increment();
+            return true;
+        } finally {
+            bucket.exit();
+        }
+    }
+
+    /**
+     * Adds a run of amounts that all happened in one millisecond, with a single bucket entry and one update of the totals.
+     * A run whose millisecond left the window before it got here is counted as evicted and folded into the rollup,
+     * where its amounts would be had they been added one by one.
+     */
+    void addAll(long timestampMillis, long runCount, long highSum, long lowSum, long runMax, long runMin, long nowMillis) {
+        advance(nowMillis);
+        long tick = Math.floorDiv(timestampMillis, granularityMillis);
+        if (!awaitSlot(timestampMillis, tick, nowMillis)) {
+            throw new IllegalArgumentException("Run at " + timestampMillis + " is ahead of the window ending at " + windowEndMillis);
+        }
+        StatisticsBucket bucket = ringBuffer.enter(tick);
+        if (bucket != null) {
+            try {
+                if (timestampMillis > expiredThroughMillis) {
+                    bucket.addAll((int) (timestampMillis - tick * granularityMillis), runCount, highSum, lowSum, runMax, runMin);
+                    extremes.add(ringBuffer.indexOf(tick), runMax, runMin);
+                    sum.add(highSum, lowSum);
+                    count.add(runCount);
+                    version.increment();
+                    return;
+                }
+            } finally {
+                bucket.exit();
+            }
+        }
+        expireRun(timestampMillis, runCount, highSum, lowSum, runMax, runMin);
+    }
+
+    /**
+     * Waits until the slot of the tick no longer holds a bucket that is still to be evicted, which only a writer
+     * of a new tick does while another thread is advancing the window to it.
+     * A future tick would otherwise reset a slot whose bucket is still in the window.
+     * @return false when the timestamp is ahead of both nowMillis and the window
+     */
+    private boolean awaitSlot(long timestampMillis, long tick, long nowMillis) {
+        if (timestampMillis > nowMillis && timestampMillis > windowEndMillis) {
+            return false;
+        }
+        //Advancing to nowMillis evicts every tick up to the one capacity ticks before it
+        while (tick - ringBuffer.capacity() > evictedThrough) {
+            Thread.yield();
+            advance(nowMillis);
+        }
+        return true;
+    }
+
+    private synchronized void expireRun(long timestampMillis, long runCount, long highSum, long lowSum, long runMax, long runMin) {
+        evictedTransactions += runCount;
+        if (rollup != null) {
+            expiring.clear();
+            expiring.addAll(runCount, highSum, lowSum, runMax, runMin);
+            rollup.add(expiring, timestampMillis);
+        }
+    }
+
+    /**
+     * Adds an amount of a batch to the sketch of its second, the batch adds it to the totals with the rest of its run.
+     */
+    void addToSketch(long timestampMillis, long amount, long nowMillis) {
+        advance(nowMillis);
+        sketches.add(timestampMillis, amount);
+    }
+
+    /**
+     * Adds the sketch bin counts of the window ending at nowMillis to counts, see {@link QuantileSketch#quantile}.
+     * A second stays in the sketches until all of it has expired, so they may include up to a second more than the totals.
+     * @return the number of amounts in counts afterwards
+     */
+    public long mergeSketches(long[] counts, long nowMillis) {
+        advance(nowMillis);
+        return sketches.mergeInto(counts, Math.floorDiv(nowMillis, 1000));
+    }
+
+    /**
+     * Moves the window to end at nowMillis. Only the thread that wins the claim does any work, which is evicting
+     * the buckets that expired whole and expiring the milliseconds of the oldest one that left the window.
+     * The others return straight away, the winner catches up to the latest time asked for before it lets go.
+     */
+    public void advance(long nowMillis) {
+        if (nowMillis <= windowEndMillis) {
+            return;
+        }
+        StatisticsBucket.updateMax(requestedEndMillis, nowMillis);
+        //Checked again after letting go, so a request published while the claim was held is not left behind
+        while (requestedEndMillis.get() > windowEndMillis && ADVANCING.compareAndSet(this, 0, 1)) {
+            try {
+                advanceTo(requestedEndMillis.get());
+            } finally {
+                advancing = 0;
+            }
+        }
+    }
+
+    //Holds the lock only against the readers of the rollup and clear, writers never take it
+    private synchronized void advanceTo(long nowMillis) {
+        if (nowMillis <= windowEndMillis) {
+            return;
+        }
+        //A millisecond is expired once it is older than the window, and a tick once its last millisecond is
+        long expiredMillis = nowMillis - windowMillis - 1;
+        long previouslyExpired = expiredThroughMillis;
+        expiredThroughMillis = expiredMillis;
+        long expiredThrough = Math.floorDiv(expiredMillis + 1, granularityMillis) - 1;
+        long previouslyEvicted = evictedThrough;
+        //A second's sketch is handed on once the last of its milliseconds expired
+        sketches.expire(Math.floorDiv(expiredMillis + 1, 1000) - 1);
+        //Only the slots of ticks that expired since the last advance can hold anything to evict
+        long fromTick = previouslyEvicted == Long.MIN_VALUE || expiredThrough - previouslyEvicted > ringBuffer.capacity()
+                ? expiredThrough - ringBuffer.capacity() + 1
+                : previouslyEvicted + 1;
+        boolean totalsChanged = false;
+        for (long tick = fromTick; tick <= expiredThrough; tick++) {
+            int i = ringBuffer.indexOf(tick);
+            StatisticsBucket bucket = ringBuffer.bucketAt(i);
+            long bucketTick = bucket.getTick();
+            //Ticks evicted before are sealed already, or were reset for a newer tick since
+            if (bucketTick > previouslyEvicted && bucketTick <= expiredThrough && bucket.seal(bucketTick)) {
+                evictedBuckets++;
+                if (bucket.getCount() > 0) {
+                    StatisticsBucket expired = bucket;
+                    int fromOffset = firstUnexpiredOffset(bucketTick, previouslyExpired);
+                    if (fromOffset > 0) {
+                        //Milliseconds taken out earlier only hold what raced their expiry, which leaves with the rest
+                        expiring.clear();
+                        bucket.mergeMillisInto(expiring, 0, granularityMillis - 1);
+                        expired = expiring;
+                    }
+                    totalsChanged |= expire(expired, bucketTick * granularityMillis + fromOffset);
+                    extremes.evict(i);
+                }
+            }
+        }
+        //Writers of the next tick of these slots may reset them from here on
+        evictedThrough = expiredThrough;
+        //The oldest tick left may already have lost some of its milliseconds
+        long boundaryTick = expiredThrough + 1;
+        int expiredOffset = (int) (expiredMillis - boundaryTick * granularityMillis);
+        int fromOffset = firstUnexpiredOffset(boundaryTick, previouslyExpired);
+        int i = ringBuffer.indexOf(boundaryTick);
+        StatisticsBucket boundary = ringBuffer.bucketAt(i);
+        if (fromOffset <= expiredOffset && boundary.getTick() == boundaryTick && boundary.getCount() > 0) {
+            //Writers that checked the timestamp before the expiry moved may still be adding to expired milliseconds.
+            //Rather than waiting for them, every expired millisecond is taken out again, so their amounts leave on the next advance
+            expiring.clear();
+            boundary.takeMillisInto(expiring, 0, expiredOffset);
+            if (expire(expiring, boundaryTick * granularityMillis + fromOffset)) {
+                totalsChanged = true;
+                //Read after clearing the leaf, so a writer adding meanwhile is either read here or raises it again
+                extremes.evict(i);
+                extremes.add(i, boundary.getMillisMax(expiredOffset + 1, granularityMillis - 1),
+                        boundary.getMillisMin(expiredOffset + 1, granularityMillis - 1));
+            }
+        }
+        if (totalsChanged) {
+            version.increment();
+        }
+        windowEndMillis = nowMillis;
+    }
+
+    /**
+     * Takes the expired totals, which started at fromMillis, out of the window and folds them into the rollup.
+     * @return false when they were empty
+     */
+    private boolean expire(StatisticsBucket expired, long fromMillis) {
+        long expiredCount = expired.getCount();
+        if (expiredCount == 0) {
+            return false;
+        }
+        sum.subtract(expired.getSum());
+        count.add(-expiredCount);
+        evictedTransactions += expiredCount;
+        if (rollup != null) {
+            rollup.add(expired, fromMillis);
+        }
+        return true;
+    }
+
+    //Offset of the first millisecond of the tick that had not expired by expiredMillis
+    private int firstUnexpiredOffset(long tick, long expiredMillis) {
+        long tickStart = tick * granularityMillis;
+        return expiredMillis < tickStart ? 0 : (int) Math.min(expiredMillis - tickStart + 1, granularityMillis);
+    }
+
+    public synchronized void clear() {
+        //Sealed first, so no writer adds to the totals between resetting them and emptying the buckets
+        for (int i = 0; i < ringBuffer.capacity(); i++) {
+            StatisticsBucket bucket = ringBuffer.bucketAt(i);
+            while (!bucket.isSealed() && !bucket.seal(bucket.getTick())) {
+                Thread.yield();
+            }
+        }
+        sum.reset();
+        count.reset();
+        extremes.clear();
+        ringBuffer.clear();
+        if (rollup != null) {
+            rollup.clear();
+        }
+        sketches.clear();
+        version.increment();
+    }
+
+    /**
+     * Totals of the window of windowMillis ending at nowMillis. Like the interval, a window within it is exact to the
+     * millisecond. Beyond it a transaction is kept for at most one second longer, where the expired part is read from the rollup.
+     * Reads one bucket per tick of a window within the interval plus the milliseconds of its first tick, and about one
+     * per second and minute beyond it.
+     */
+    public StatisticsBucket aggregate(long windowMillis, long nowMillis) {
+        if (windowMillis > getMaxWindowSeconds() * 1000L) {
+            throw new IllegalArgumentException("Window of " + windowMillis + "ms exceeds " + getMaxWindowSeconds() + "s");
+        }
+        advance(nowMillis);
+        long nowTick = Math.floorDiv(nowMillis, granularityMillis);
+        if (windowMillis <= this.windowMillis) {
+            //Whole ticks after the one the window starts in, and that one's milliseconds from the start on
+            long startMillis = nowMillis - windowMillis;
+            long startTick = Math.floorDiv(startMillis, granularityMillis);
+            int startOffset = (int) (startMillis - startTick * granularityMillis);
+            StatisticsBucket result = ringBuffer.aggregate(startOffset == 0 ? startTick - 1 : startTick, nowTick);
+            StatisticsBucket first = ringBuffer.bucketAt(ringBuffer.indexOf(startTick));
+            if (startOffset > 0 && first.getTick() == startTick) {
+                first.mergeMillisInto(result, startOffset, granularityMillis - 1);
+            }
+            return result;
+        }
+        StatisticsBucket result = new StatisticsBucket(nowTick);
+        //Keeps an eviction from moving a bucket out of the totals and into the rollup between the two reads
+        synchronized (this) {
+            result.addAll(sum, count.sum(), extremes.getMax(), extremes.getMin());
+            rollup.mergeInto(result, Math.floorDiv(nowMillis - windowMillis, 1000), Math.floorDiv(nowMillis, 1000));
+        }
+        return result;
+    }
+
+    /**
+     * Adds every bucket of the window ending at nowMillis that lies within the series to its point: the ticks
+     * still in the interval from the ring, older seconds from the rollup.
+     */
+    public void series(StatisticsSeries series, long nowMillis) {
+        advance(nowMillis);
+        //Keeps an eviction from moving a bucket from the ring into the rollup while both are read
+        synchronized (this) {
+            for (int i = 0; i < ringBuffer.capacity(); i++) {
+                StatisticsBucket bucket = ringBuffer.bucketAt(i);
+                long bucketTick = bucket.getTick();
+                if (bucketTick > evictedThrough) {
+                    //The milliseconds the oldest bucket already lost are in the rollup
+                    int fromOffset = firstUnexpiredOffset(bucketTick, expiredThroughMillis);
+                    if (fromOffset > 0) {
+                        expiring.clear();
+                        bucket.mergeMillisInto(expiring, fromOffset, granularityMillis - 1);
+                        bucket = expiring;
+                    }
+                    series.add(bucketTick * granularityMillis, bucket);
+                }
+            }
+            if (rollup != null) {
+                rollup.addTo(series, Math.floorDiv(series.getStartMillis(), 1000), Math.floorDiv(nowMillis, 1000));
+            }
+        }
+    }
+
+    public int getMaxWindowSeconds() {
+        return rollup == null ? interval : rollup.getMaxWindowSeconds();
+    }
+
+    /**
+     * Changes whenever the totals do. Totals read after reading a version include at least every change it counts.
+     */
+    public long getVersion() {
+        return version.sum();
+    }
+
+    public StatisticsRingBuffer getRingBuffer() {
+        return ringBuffer;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public int getGranularityMillis() {
+        return granularityMillis;
+    }
+
+    public long getEvictedBuckets() {
+        return evictedBuckets;
+    }
+
+    public long getEvictedTransactions() {
+        return evictedTransactions;
+    }
+
+    public ExactSumAdder getSum() {
+        return sum;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return count.sum() == 0 ? 0 : extremes.getMax();
+    }
+
+    public long getMin() {
+        return count.sum() == 0 ? 0 : extremes.getMin();
+    }
+}
@@ -0,0 +1,65 @@
+package com.n26.store;
+
+/**
+ * Collects a batch of amounts for a {@link SlidingWindowStatistics} and applies every run of
+ * consecutive amounts in the same millisecond at once, so a time ordered batch enters each bucket and
+ * updates the window totals once per millisecond instead of once per transaction.
+ * Nothing is buffered beyond the current run and no bucket is held open between calls.
+ * Amounts go to the percentile sketches as they are added, like every amount added to the window.
+ * A batch is meant for a single thread; {@link #close()} applies the last run.
+ */
+public class StatisticsBatch implements AutoCloseable {
+    private final SlidingWindowStatistics window;
+
+    private long timestampMillis;
+    private long count;
+    private long highSum;
+    private long lowSum;
+    private long max;
+    private long min;
+    private long nowMillis;
+
+    public StatisticsBatch(SlidingWindowStatistics window) {
+        this.window = window;
+    }
+
+    public void add(long timestampMillis, long amount, long nowMillis) {
+        //Percentiles need every amount, not just the run's totals
+        window.addToSketch(timestampMillis, amount, nowMillis);
+        //Runs stay within a millisecond, so the oldest bucket can still expire a millisecond at a time
+        if (count > 0 && timestampMillis != this.timestampMillis) {
+            flush();
+        }
+        if (count == 0) {
+            this.timestampMillis = timestampMillis;
+            max = Long.MIN_VALUE;
+            min = Long.MAX_VALUE;
+        }
+        //Split like ExactSumAdder, the halves only overflow after 2^31 amounts in one run
+        highSum += amount >> 32;
+        lowSum += amount & 0xFFFFFFFFL;
+        max = Math.max(max, amount);
+        min = Math.min(min, amount);
+        count++;
+        this.nowMillis = nowMillis;
+    }
+
+    /**
+     * Applies the current run to the window. Its amounts are never dropped: a run whose millisecond expired
+     * since it was validated is evicted straight away, see {@link SlidingWindowStatistics#addAll}.
+     */
+    public void flush() {
+        if (count == 0) {
+            return;
+        }
+        window.addAll(timestampMillis, count, highSum, lowSum, max, min, nowMillis);
+        count = 0;
+        highSum = 0;
+        lowSum = 0;
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+}
@@ -0,0 +1,314 @@
+package com.n26.store;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregate of every transaction that happened in one tick, in scaled long amounts.
+ * A tick is epochMillis / granularity, so with a 1000 ms granularity it is the epoch second.
+ * Writes are lock-free: sum and count are striped adders so threads hitting the same
+ * tick do not contend on one cell, and min/max are CAS loops.
+ * The ring reuses a bucket for later ticks: its tick is a stamp that {@link #reset(long, long)} moves on with a CAS,
+ * and emptying it in place keeps the cells the adders striped into under contention.
+ * Once the tick leaves the window the bucket is sealed, after which it rejects writers until it is reset.
+ * <p>
+ * A bucket of a tick wider than a millisecond can also keep the totals of each of its milliseconds, so the
+ * window can expire it a millisecond at a time while it is the oldest one.
+ */
+public class StatisticsBucket {
+    static final long UNASSIGNED = Long.MIN_VALUE;
+    //Stamp while one thread has the bucket to itself, older than any tick so readers skip it
+    private static final long RESETTING = Long.MIN_VALUE + 1;
+    private static final AtomicLongFieldUpdater<StatisticsBucket> TICK = AtomicLongFieldUpdater.newUpdater(StatisticsBucket.class, "tick");
+    //Count, high sum, low sum, max and min of each millisecond, next to each other
+    private static final int MILLIS_FIELDS = 5;
+
+    private volatile long tick;
+    private final ExactSumAdder sum = new ExactSumAdder();
+    private final LongAdder count = new LongAdder();
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final LongAdder writers = new LongAdder();
+    private volatile boolean sealed;
+    //Null unless per millisecond totals are kept
+    private final AtomicLongArray millis;
+
+    public StatisticsBucket(long tick) {
+        this(tick, 1);
+    }
+
+    /**
+     * @param millisPerTick width of the tick, its milliseconds' totals are kept when it is wider than one
+     */
+    StatisticsBucket(long tick, int millisPerTick) {
+        this.tick = tick;
+        this.millis = millisPerTick > 1 ? new AtomicLongArray(millisPerTick * MILLIS_FIELDS) : null;
+        resetMillis();
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public void add(long amount) {
+        updateMax(max, amount);
+        updateMin(min, amount);
+        sum.add(amount);
+        //Count last, so a reader that sees the transaction also sees its min/max
+        count.increment();
+    }
+
+    /**
+     * Adds an amount that happened offset milliseconds into the tick.
+     */
+    void add(long amount, int offset) {
+        if (millis != null) {
+            addMillis(offset, 1, amount >> 32, amount & 0xFFFFFFFFL, amount, amount);
+        }
+        add(amount);
+    }
+
+    /**
+     * Adds a run of transactions of one millisecond that was aggregated by the caller, see {@link StatisticsBatch}.
+     */
+    void addAll(int offset, long runCount, long highSum, long lowSum, long runMax, long runMin) {
+        if (millis != null) {
+            addMillis(offset, runCount, highSum, lowSum, runMax, runMin);
+        }
+        addAll(runCount, highSum, lowSum, runMax, runMin);
+    }
+
+    /**
+     * Merges the totals of the milliseconds fromOffset through toOffset of the tick into target.
+     */
+    void mergeMillisInto(StatisticsBucket target, int fromOffset, int toOffset) {
+        for (int i = fromOffset * MILLIS_FIELDS; i <= toOffset * MILLIS_FIELDS; i += MILLIS_FIELDS) {
+            long millisCount = millis.get(i);
+            if (millisCount > 0) {
+                target.addAll(millisCount, millis.get(i + 1), millis.get(i + 2), millis.get(i + 3), millis.get(i + 4));
+            }
+        }
+    }
+
+    /**
+     * Moves the totals of the milliseconds fromOffset through toOffset into target, so they only keep what is added
+     * afterwards. Their max and min stay, as an amount added meanwhile cannot be told apart from the ones taken.
+     */
+    void takeMillisInto(StatisticsBucket target, int fromOffset, int toOffset) {
+        for (int i = fromOffset * MILLIS_FIELDS; i <= toOffset * MILLIS_FIELDS; i += MILLIS_FIELDS) {
+            long millisCount = millis.get(i);
+            if (millisCount > 0) {
+                long highSum = millis.get(i + 1);
+                long lowSum = millis.get(i + 2);
+                target.addAll(millisCount, highSum, lowSum, millis.get(i + 3), millis.get(i + 4));
+                //Subtracted rather than zeroed, so whatever a writer adds meanwhile stays
+                millis.addAndGet(i, -millisCount);
+                millis.addAndGet(i + 1, -highSum);
+                millis.addAndGet(i + 2, -lowSum);
+            }
+        }
+    }
+
+    /**
+     * @return the largest amount of the milliseconds fromOffset through toOffset, Long.MIN_VALUE when they are empty
+     */
+    long getMillisMax(int fromOffset, int toOffset) {
+        long result = Long.MIN_VALUE;
+        for (int i = fromOffset * MILLIS_FIELDS; i <= toOffset * MILLIS_FIELDS; i += MILLIS_FIELDS) {
+            result = Math.max(result, millis.get(i + 3));
+        }
+        return result;
+    }
+
+    /**
+     * @return the smallest amount of the milliseconds fromOffset through toOffset, Long.MAX_VALUE when they are empty
+     */
+    long getMillisMin(int fromOffset, int toOffset) {
+        long result = Long.MAX_VALUE;
+        for (int i = fromOffset * MILLIS_FIELDS; i <= toOffset * MILLIS_FIELDS; i += MILLIS_FIELDS) {
+            result = Math.min(result, millis.get(i + 4));
+        }
+        return result;
+    }
+
+    private void addMillis(int offset, long runCount, long highSum, long lowSum, long runMax, long runMin) {
+        int i = offset * MILLIS_FIELDS;
+        long current;
+        while (runMax > (current = millis.get(i + 3))) {
+            if (millis.compareAndSet(i + 3, current, runMax)) {
+                break;
+            }
+        }
+        while (runMin < (current = millis.get(i + 4))) {
+            if (millis.compareAndSet(i + 4, current, runMin)) {
+                break;
+            }
+        }
+        //Count last, like the bucket's own totals
+        millis.addAndGet(i + 1, highSum);
+        millis.addAndGet(i + 2, lowSum);
+        millis.addAndGet(i, runCount);
+    }
+
+    private void resetMillis() {
+        if (millis != null) {
+            for (int i = 0; i < millis.length(); i += MILLIS_FIELDS) {
+                millis.set(i, 0);
+                millis.set(i + 1, 0);
+                millis.set(i + 2, 0);
+                millis.set(i + 3, Long.MIN_VALUE);
+                millis.set(i + 4, Long.MAX_VALUE);
+            }
+        }
+    }
+
+    /**
+     * Adds a run of transactions that was aggregated by the caller.
+     */
+    void addAll(long runCount, long highSum, long lowSum, long runMax, long runMin) {
+        updateMax(max, runMax);
+        updateMin(min, runMin);
+        sum.add(highSum, lowSum);
+        count.add(runCount);
+    }
+
+    /**
+     * Merges this bucket into target when its tick lies in (fromTick, toTick].
+     */
+    public void mergeInto(StatisticsBucket target, long fromTick, long toTick) {
+        if (tick > fromTick && tick <= toTick) {
+            mergeInto(target);
+        }
+    }
+
+    public void mergeInto(StatisticsBucket target) {
+        target.addAll(sum, count.sum(), max.get(), min.get());
+    }
+
+    /**
+     * Adds totals kept elsewhere, such as the running totals of a window.
+     */
+    void addAll(ExactSumAdder otherSum, long otherCount, long otherMax, long otherMin) {
+        if (otherCount > 0) {
+            updateMax(max, otherMax);
+            updateMin(min, otherMin);
+            sum.add(otherSum);
+            count.add(otherCount);
+        }
+    }
+
+    /**
+     * Registers a writer for the tick. Every successful enter must be paired with {@link #exit()}.
+     * @return false when the bucket is sealed or no longer belongs to the tick
+     */
+    public boolean enter(long expectedTick) {
+        writers.increment();
+        if (sealed || tick != expectedTick) {
+            writers.decrement();
+            return false;
+        }
+        return true;
+    }
+
+    public void exit() {
+        writers.decrement();
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * Rejects new writers and waits for the ones already inside to finish,
+     * so the totals read afterwards are final.
+     * @return false when the bucket was already sealed or no longer belongs to the tick
+     */
+    public boolean seal(long expectedTick) {
+        //Claimed like a reset, so sealing and moving the bucket on never overlap
+        if (sealed || expectedTick == RESETTING || !TICK.compareAndSet(this, expectedTick, RESETTING)) {
+            return false;
+        }
+        boolean wasSealed = sealed;
+        sealed = true;
+        tick = expectedTick;
+        if (wasSealed) {
+            return false;
+        }
+        awaitWriters();
+        return true;
+    }
+
+    /**
+     * Empties the bucket in place and hands it to toTick, if it still belongs to fromTick. Writers still inside
+     * are waited for, and one that enters meanwhile fails and sees toTick on its retry.
+     * @return false when another thread moved the bucket on first
+     */
+    boolean reset(long fromTick, long toTick) {
+        if (fromTick == RESETTING || !TICK.compareAndSet(this, fromTick, RESETTING)) {
+            return false;
+        }
+        awaitWriters();
+        sum.reset();
+        count.reset();
+        max.set(Long.MIN_VALUE);
+        min.set(Long.MAX_VALUE);
+        resetMillis();
+        sealed = false;
+        tick = toTick;
+        return true;
+    }
+
+    /**
+     * Empties the bucket and leaves it unassigned, whichever tick it belongs to.
+     */
+    void clear() {
+        while (!reset(tick, UNASSIGNED)) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Waits for the writers inside to finish, without turning new ones away.
+     */
+    private void awaitWriters() {
+        while (writers.sum() != 0) {
+            Thread.yield();
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public ExactSumAdder getSum() {
+        return sum;
+    }
+
+    public long getMax() {
+        return count.sum() == 0 ? 0 : max.get();
+    }
+
+    public long getMin() {
+        return count.sum() == 0 ? 0 : min.get();
+    }
+
+    static void updateMax(AtomicLong max, long amount) {
+        long current;
+        while (amount > (current = max.get())) {
+            if (max.compareAndSet(current, amount)) {
+                return;
+            }
+        }
+    }
+
+    static void updateMin(AtomicLong min, long amount) {
+        long current;
+        while (amount < (current = min.get())) {
+            if (min.compareAndSet(current, amount)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.n26.store;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Max and min of the buckets of a ring, kept in a segment tree over its slots so the window's extremes survive an
+ * eviction without rescanning the ring. Each node holds the extremes of the slots below it, the root those of the window.
+ * <p>
+ * Writers raise the leaf of their slot and walk up only while they beat the node, so most stop after a level or two.
+ * Evicting a slot rebuilds just its path to the root, O(log slots), and is only done by one thread at a time.
+ */
+class StatisticsExtremes {
+    private final int leaves;
+    private final AtomicLongArray max;
+    private final AtomicLongArray min;
+
+    StatisticsExtremes(int slots) {
+        int leaves = 1;
+        while (leaves < slots) {
+            leaves <<= 1;
+        }
+        this.leaves = leaves;
+        //Node 1 is the root, the children of node n are 2n and 2n + 1 and the leaves start at index leaves
+        this.max = new AtomicLongArray(2 * leaves);
+        this.min = new AtomicLongArray(2 * leaves);
+        clear();
+    }
+
+    long getMax() {
+        return max.get(1);
+    }
+
+    long getMin() {
+        return min.get(1);
+    }
+
+    /**
+     * Adds the extremes of amounts written to the slot. A writer that stops below a node another writer raised
+     * further leaves the rest of the path to that writer.
+     */
+    void add(int slot, long amountMax, long amountMin) {
+        for (int node = leaves + slot; node > 0 && raise(node, amountMax); node >>>= 1) {
+        }
+        for (int node = leaves + slot; node > 0 && lower(node, amountMin); node >>>= 1) {
+        }
+    }
+
+    /**
+     * Empties the slot, once no writer can add to its bucket anymore.
+     */
+    void evict(int slot) {
+        int node = leaves + slot;
+        max.set(node, Long.MIN_VALUE);
+        min.set(node, Long.MAX_VALUE);
+        for (node >>>= 1; node > 0; node >>>= 1) {
+            rebuild(node);
+        }
+    }
+
+    void clear() {
+        for (int node = 0; node < max.length(); node++) {
+            max.set(node, Long.MIN_VALUE);
+            min.set(node, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Sets the node from its children. The second pass picks up writers that raised a child during
+     * the first and whose own update of the node was then overwritten.
+     */
+    private void rebuild(int node) {
+        int left = 2 * node;
+        max.set(node, Math.max(max.get(left), max.get(left + 1)));
+        min.set(node, Math.min(min.get(left), min.get(left + 1)));
+        raise(node, Math.max(max.get(left), max.get(left + 1)));
+        lower(node, Math.min(min.get(left), min.get(left + 1)));
+    }
+
+    //Like StatisticsBucket.updateMax, but reports whether this call moved the node
+    private boolean raise(int node, long amount) {
+        long current;
+        while (amount > (current = max.get(node))) {
+            if (max.compareAndSet(node, current, amount)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean lower(int node, long amount) {
+        long current;
+        while (amount < (current = min.get(node))) {
+            if (min.compareAndSet(node, current, amount)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
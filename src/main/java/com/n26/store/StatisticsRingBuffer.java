@@ -0,0 +1,132 @@
+package com.n26.store;
+
+/**
+ * Preallocated ring of time buckets, one per tick of the configured granularity. Slot i holds
+ * the aggregate of every tick t where t mod size == i, so memory stays constant however many
+ * transactions arrive. Moving a slot to a newer tick resets its bucket in place with a CAS on
+ * the bucket's tick, so no writer ever takes a lock and no tick allocates.
+ */
+public class StatisticsRingBuffer {
+    private final StatisticsBucket[] buckets;
+
+    //One extra slot for the oldest, partially expired tick of the window
+    public StatisticsRingBuffer(int windowTicks) {
+        this(windowTicks, 1);
+    }
+
+    /**
+     * @param millisPerTick width of a tick, buckets keep the totals of each of its milliseconds when it is wider than one
+     */
+    StatisticsRingBuffer(int windowTicks, int millisPerTick) {
+        buckets = new StatisticsBucket[windowTicks + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new StatisticsBucket(StatisticsBucket.UNASSIGNED, millisPerTick);
+        }
+    }
+
+    /**
+     * @return false when the slot already moved on to a newer tick and the amount was dropped
+     */
+    public boolean add(long tick, long amount) {
+        StatisticsBucket bucket = enter(tick);
+        if (bucket == null) {
+            return false;
+        }
+        try {
+            bucket.add(amount);
+            return true;
+        } finally {
+            bucket.exit();
+        }
+    }
+
+    /**
+     * Aggregates every bucket whose tick lies in (fromTick, toTick].
+     */
+    public StatisticsBucket aggregate(long fromTick, long toTick) {
+        StatisticsBucket result = new StatisticsBucket(toTick);
+        //A range shorter than the ring maps each of its ticks to a different slot, so only those slots are visited
+        long range = toTick - fromTick;
+        long slots = range < 0 || range > buckets.length ? buckets.length : range;
+        for (long tick = toTick - slots + 1; tick <= toTick; tick++) {
+            buckets[indexOf(tick)].mergeInto(result, fromTick, toTick);
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of amounts in buckets that are not sealed, a sealed bucket only keeps its totals until it is reset
+     */
+    public long size() {
+        long size = 0;
+        for (StatisticsBucket bucket : buckets) {
+            if (!bucket.isSealed()) {
+                size += bucket.getCount();
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (StatisticsBucket bucket : buckets) {
+            bucket.clear();
+        }
+    }
+
+    public int capacity() {
+        return buckets.length;
+    }
+
+    StatisticsBucket bucketAt(int index) {
+        return buckets[index];
+    }
+
+    int indexOf(long tick) {
+        return (int) Math.floorMod(tick, (long) buckets.length);
+    }
+
+    void clear(int index) {
+        buckets[index].clear();
+    }
+
+    /**
+     * Returns the bucket for the tick, resetting it when the slot still holds an older tick.
+     * @return null when the slot already moved on to a newer tick
+     */
+    StatisticsBucket bucketFor(long tick) {
+        StatisticsBucket bucket = buckets[indexOf(tick)];
+        while (true) {
+            long current = bucket.getTick();
+            if (current == tick) {
+                return bucket;
+            }
+            if (current > tick) {
+                return null;
+            }
+            //Losing the race just means another thread moved the bucket on, the next pass reads its fresh tick
+            if (!bucket.reset(current, tick)) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Enters the bucket for the tick as a writer, see {@link StatisticsBucket#enter(long)}. A writer that raced
+     * a reset retries against the slot's fresh tick.
+     * @return null when the slot moved on to a newer tick or the tick's bucket is sealed
+     */
+    StatisticsBucket enter(long tick) {
+        while (true) {
+            StatisticsBucket bucket = bucketFor(tick);
+            if (bucket == null) {
+                return null;
+            }
+            if (bucket.enter(tick)) {
+                return bucket;
+            }
+            if (bucket.isSealed() && bucket.getTick() == tick) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.n26.store;
+
+/**
+ * Per-second and per-minute aggregates of the buckets that already left a {@link SlidingWindowStatistics}, so windows
+ * longer than its interval are answered from shared aggregates rather than from the transactions.
+ * <p>
+ * Each expired bucket is folded in once its totals are final, into its second and into its minute, so transactions
+ * themselves are never written here. A window reads the seconds up to its first whole minute and whole minutes from
+ * there on, at most 59 seconds plus maxWindowSeconds / 60 + 1 minutes however many transactions it covers.
+ * Only called while holding the window's lock, so folding and reading never overlap.
+ */
+public class StatisticsRollup {
+    private static final int SECONDS_PER_MINUTE = 60;
+
+    private final int maxWindowSeconds;
+    private final StatisticsRingBuffer seconds;
+    private final StatisticsRingBuffer minutes;
+
+    public StatisticsRollup(int maxWindowSeconds) {
+        this.maxWindowSeconds = maxWindowSeconds;
+        //Seconds are only read for the start of a window, but that start may be up to maxWindowSeconds back
+        this.seconds = new StatisticsRingBuffer(maxWindowSeconds + 1);
+        this.minutes = new StatisticsRingBuffer(maxWindowSeconds / SECONDS_PER_MINUTE + 2);
+    }
+
+    public int getMaxWindowSeconds() {
+        return maxWindowSeconds;
+    }
+
+    /**
+     * Folds in a sealed bucket whose tick starts at startMillis.
+     */
+    void add(StatisticsBucket bucket, long startMillis) {
+        long second = Math.floorDiv(startMillis, 1000);
+        addTo(seconds, second, bucket);
+        addTo(minutes, Math.floorDiv(second, SECONDS_PER_MINUTE), bucket);
+    }
+
+    private static void addTo(StatisticsRingBuffer ring, long tick, StatisticsBucket bucket) {
+        StatisticsBucket target = ring.bucketFor(tick);
+        //Null when the slot already holds a newer tick, the bucket is then older than any window served
+        if (target != null) {
+            bucket.mergeInto(target);
+        }
+    }
+
+    /**
+     * Merges everything folded in from fromSecond through toSecond into target.
+     */
+    void mergeInto(StatisticsBucket target, long fromSecond, long toSecond) {
+        long second = fromSecond;
+        for (; second <= toSecond && Math.floorMod(second, SECONDS_PER_MINUTE) != 0; second++) {
+            merge(seconds, second, target);
+        }
+        //A minute never holds more than has been folded, so the last, partial one can be read whole as well
+        for (long minute = Math.floorDiv(second, SECONDS_PER_MINUTE); minute <= Math.floorDiv(toSecond, SECONDS_PER_MINUTE); minute++) {
+            merge(minutes, minute, target);
+        }
+    }
+
+    /**
+     * Adds every second folded in from fromSecond through toSecond to its point of the series.
+     */
+    void addTo(StatisticsSeries series, long fromSecond, long toSecond) {
+        for (long second = fromSecond; second <= toSecond; second++) {
+            StatisticsBucket bucket = seconds.bucketAt(seconds.indexOf(second));
+            if (bucket.getTick() == second) {
+                series.add(second * 1000, bucket);
+            }
+        }
+    }
+
+    private static void merge(StatisticsRingBuffer ring, long tick, StatisticsBucket target) {
+        StatisticsBucket bucket = ring.bucketAt(ring.indexOf(tick));
+        if (bucket.getTick() == tick) {
+            bucket.mergeInto(target);
+        }
+    }
+
+    void clear() {
+        seconds.clear();
+        minutes.clear();
+    }
+}
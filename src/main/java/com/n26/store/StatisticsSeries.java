@@ -0,0 +1,103 @@
+package com.n26.store;
+
+import com.n26.model.StatisticsPoints;
+
+import java.math.BigInteger;
+
+/**
+ * Totals per step of a window, in parallel primitive arrays, so a series of any length is a fixed handful of objects
+ * and reading a point allocates nothing. Point i covers [start + i * step, start + (i + 1) * step).
+ * Sums are kept split into upper and lower 32 bits like {@link ExactSumAdder}, so they are exact.
+ */
+public class StatisticsSeries implements StatisticsPoints {
+    private final long startMillis;
+    private final long stepMillis;
+    private final long[] counts;
+    private final long[] sumHighs;
+    private final long[] sumLows;
+    private final long[] maxs;
+    private final long[] mins;
+
+    public StatisticsSeries(long startMillis, long stepMillis, int size) {
+        this.startMillis = startMillis;
+        this.stepMillis = stepMillis;
+        this.counts = new long[size];
+        this.sumHighs = new long[size];
+        this.sumLows = new long[size];
+        this.maxs = new long[size];
+        this.mins = new long[size];
+    }
+
+    /**
+     * Adds a bucket starting at startMillis to its point, when that lies within the series.
+     */
+    void add(long bucketStartMillis, StatisticsBucket bucket) {
+        long count = bucket.getCount();
+        long index = Math.floorDiv(bucketStartMillis - startMillis, stepMillis);
+        if (count == 0 || index < 0 || index >= counts.length) {
+            return;
+        }
+        int i = (int) index;
+        maxs[i] = counts[i] == 0 ? bucket.getMax() : Math.max(maxs[i], bucket.getMax());
+        mins[i] = counts[i] == 0 ? bucket.getMin() : Math.min(mins[i], bucket.getMin());
+        counts[i] += count;
+        sumHighs[i] += bucket.getSum().highSum();
+        sumLows[i] += bucket.getSum().lowSum();
+    }
+
+    @Override
+    public int size() {
+        return counts.length;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    @Override
+    public long getStepMillis() {
+        return stepMillis;
+    }
+
+    @Override
+    public long getStartMillis(int i) {
+        return startMillis + i * stepMillis;
+    }
+
+    @Override
+    public long getCount(int i) {
+        return counts[i];
+    }
+
+    @Override
+    public long getMax(int i) {
+        return maxs[i];
+    }
+
+    @Override
+    public long getMin(int i) {
+        return mins[i];
+    }
+
+    @Override
+    public boolean isSumScaled(int i) {
+        //high * 2^32 + low fits when high does in 31 bits and adding low does not overflow
+        long high = sumHighs[i];
+        if (high < Integer.MIN_VALUE || high > Integer.MAX_VALUE) {
+            return false;
+        }
+        long shifted = high << 32;
+        long sum = shifted + sumLows[i];
+        return ((shifted ^ sum) & (sumLows[i] ^ sum)) >= 0;
+    }
+
+    @Override
+    public long getScaledSum(int i) {
+        return (sumHighs[i] << 32) + sumLows[i];
+    }
+
+    @Override
+    public BigInteger getSum(int i) {
+        return BigInteger.valueOf(sumHighs[i]).shiftLeft(32).add(BigInteger.valueOf(sumLows[i]));
+    }
+}
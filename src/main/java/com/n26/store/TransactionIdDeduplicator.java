@@ -0,0 +1,76 @@
+package com.n26.store;
+
+/**
+ * Remembers the client supplied ids of the transactions in the window, in one preallocated
+ * {@link TransactionIdFilter} per second of timestamps plus one for the partially expired second.
+ * A retry repeats the timestamp, so an id is only ever looked up in the filter of its own second, and the filter
+ * is emptied and handed to a later second once that second left the window, along with the transactions it guards.
+ * <p>
+ * Looking up and adding an id takes no lock. Handing on filters does, once per second of the clock.
+ * Two retries racing each other may both count as new, and an id that was never seen is reported as seen
+ * with the configured false-positive rate.
+ */
+public class TransactionIdDeduplicator {
+    private final int interval;
+    private final TransactionIdFilter[] filters;
+    //Every second up to and including this one has been handed on
+    private volatile long expiredThrough = Long.MIN_VALUE;
+
+    public TransactionIdDeduplicator(int interval, int expectedIdsPerSecond, double falsePositiveRate) {
+        this.interval = interval;
+        this.filters = new TransactionIdFilter[interval + 2];
+        for (int i = 0; i < filters.length; i++) {
+            filters[i] = new TransactionIdFilter(expectedIdsPerSecond, falsePositiveRate);
+        }
+    }
+
+    /**
+     * @return false when the id was most likely already added for a transaction of the same second
+     */
+    public boolean add(CharSequence id, long timestampMillis, long nowMillis) {
+        advance(nowMillis);
+        long second = Math.floorDiv(timestampMillis, 1000);
+        return filters[indexOf(second)].add(second, Hashing.hash1(id), Hashing.hash2(id));
+    }
+
+    /**
+     * Looks the id up without adding it, for callers that add it only once the transaction was accepted.
+     */
+    public boolean mightContain(CharSequence id, long timestampMillis, long nowMillis) {
+        advance(nowMillis);
+        long second = Math.floorDiv(timestampMillis, 1000);
+        return filters[indexOf(second)].mightContain(second, Hashing.hash1(id), Hashing.hash2(id));
+    }
+
+    public void clear() {
+        synchronized (this) {
+            for (TransactionIdFilter filter : filters) {
+                filter.reset(filter.getSecond());
+            }
+        }
+    }
+
+    private void advance(long nowMillis) {
+        long expiredSecond = Math.floorDiv(nowMillis - interval * 1000L, 1000) - 1;
+        if (expiredSecond <= expiredThrough) {
+            return;
+        }
+        synchronized (this) {
+            if (expiredSecond <= expiredThrough) {
+                return;
+            }
+            //On the first call, or after a pause longer than the ring, every filter is handed on at once
+            long fromSecond = expiredThrough == Long.MIN_VALUE || expiredSecond - expiredThrough > filters.length
+                    ? expiredSecond - filters.length + 1
+                    : expiredThrough + 1;
+            for (long second = fromSecond; second <= expiredSecond; second++) {
+                filters[indexOf(second)].reset(second + filters.length);
+            }
+            expiredThrough = expiredSecond;
+        }
+    }
+
+    private int indexOf(long second) {
+        return (int) Math.floorMod(second, (long) filters.length);
+    }
+}
@@ -0,0 +1,101 @@
+package com.n26.store;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filter of the transaction ids of one second of timestamps, sized for an expected number of ids and a
+ * false-positive rate. Bits are set with atomic ORs, so concurrent writers never wait for each other.
+ * <p>
+ * Filters are reused for later seconds like {@link QuantileSketch}: a writer enters before testing, and
+ * {@link #reset(long)} seals the filter and waits for writers inside before clearing it.
+ */
+public class TransactionIdFilter {
+    static final long UNASSIGNED = Long.MIN_VALUE;
+
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+    private final LongAdder writers = new LongAdder();
+    private volatile long second = UNASSIGNED;
+    private volatile boolean sealed;
+
+    public TransactionIdFilter(int expectedIds, double falsePositiveRate) {
+        if (expectedIds <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Expected ids must be positive and the false-positive rate within (0, 1), got "
+                    + expectedIds + " and " + falsePositiveRate);
+        }
+        //Optimal size and number of hashes for n expected ids at rate p: m = -n ln p / (ln 2)^2, k = m / n ln 2
+        double optimalBits = -expectedIds * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        int words = (int) Math.max(1, Math.ceil(optimalBits / Long.SIZE));
+        this.words = new AtomicLongArray(words);
+        this.bits = (long) words * Long.SIZE;
+        this.hashes = (int) Math.max(1, Math.round(optimalBits / expectedIds * Math.log(2)));
+    }
+
+    public long getSecond() {
+        return second;
+    }
+
+    /**
+     * Adds the id given as two independent hashes, see {@link Hashing}.
+     * When the filter no longer belongs to the second nothing is known about the id, and it counts as new.
+     * @return false when every bit of the id was already set, so the id was most likely added before
+     */
+    boolean add(long second, long hash1, long hash2) {
+        writers.increment();
+        try {
+            if (sealed || this.second != second) {
+                return true;
+            }
+            boolean added = false;
+            //Double hashing, hash1 + i * hash2 behaves like k independent hashes
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bits);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                if ((words.get(word) & mask) == 0 && (words.getAndAccumulate(word, mask, TransactionIdFilter::or) & mask) == 0) {
+                    added = true;
+                }
+            }
+            return added;
+        } finally {
+            writers.decrement();
+        }
+    }
+
+    /**
+     * @return whether every bit of the id is set, false as well when the filter no longer belongs to the second
+     */
+    boolean mightContain(long second, long hash1, long hash2) {
+        if (this.second != second) {
+            return false;
+        }
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bits);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long or(long word, long mask) {
+        return word | mask;
+    }
+
+    /**
+     * Empties the filter and hands it to another second. Only called by one thread at a time.
+     */
+    void reset(long newSecond) {
+        sealed = true;
+        while (writers.sum() != 0) {
+            Thread.yield();
+        }
+        for (int i = 0; i < words.length(); i++) {
+            words.set(i, 0);
+        }
+        second = newSecond;
+        sealed = false;
+    }
+}
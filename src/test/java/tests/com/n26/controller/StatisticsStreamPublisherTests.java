@@ -0,0 +1,129 @@
+package tests.com.n26.controller;
+
+import com.n26.controllers.StatisticsStreamPublisher;
+import com.n26.service.TransactionService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+public class StatisticsStreamPublisherTests {
+
+    @Mock
+    private TransactionService transactionService;
+    private StatisticsStreamPublisher publisher;
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        Mockito.when(transactionService.getStatisticsJson()).thenAnswer(invocation ->
+                ("{\"count\":" + count.get() + "}").getBytes(StandardCharsets.UTF_8));
+        publisher = new StatisticsStreamPublisher(transactionService);
+        ReflectionTestUtils.setField(publisher, "pushMs", 10L);
+        ReflectionTestUtils.setField(publisher, "writeTimeoutMs", 100L);
+        publisher.init();
+    }
+
+    @After
+    public void tearDown() {
+        publisher.destroy();
+    }
+
+    @Test
+    public void stalledSubscriberIsDroppedWithoutHoldingUpTheOthers() throws Exception {
+        StubOutputStream healthy = subscribe(true);
+        StubOutputStream stalled = subscribe(false);
+        assertThat(healthy.written(), containsString("event:statistics\ndata:{\"count\":0}\n\n"));
+        assertThat(publisher.getSubscriberCount(), is(2));
+
+        count.set(1);
+        for (int i = 0; i < 100 && !healthy.written().contains("{\"count\":1}"); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(healthy.written(), containsString("{\"count\":1}"));
+
+        //The stalled client never took its first event, so it is dropped once the write timeout passed
+        for (int i = 0; i < 100 && publisher.getSubscriberCount() > 1; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(publisher.getSubscriberCount(), is(1));
+        assertThat(stalled.written(), is(""));
+
+        count.set(2);
+        for (int i = 0; i < 100 && !healthy.written().contains("{\"count\":2}"); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(healthy.written().endsWith("event:statistics\ndata:{\"count\":2}\n\n"));
+    }
+
+    private StubOutputStream subscribe(boolean ready) throws IOException {
+        StubOutputStream out = new StubOutputStream(ready);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/statistics/stream");
+        request.setAsyncSupported(true);
+        publisher.subscribe(request, new MockHttpServletResponse() {
+            @Override
+            public ServletOutputStream getOutputStream() {
+                return out;
+            }
+        });
+        return out;
+    }
+
+    //Non-blocking output that either takes every write or, like a client that stopped reading, none
+    private static class StubOutputStream extends ServletOutputStream {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final boolean ready;
+
+        StubOutputStream(boolean ready) {
+            this.ready = ready;
+        }
+
+        synchronized String written() {
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            //Like the container, which calls the listener once it is set
+            try {
+                writeListener.onWritePossible();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            bytes.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            bytes.write(b, off, len);
+        }
+    }
+}
@@ -1,7 +1,16 @@
 package tests.com.n26.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.n26.config.BinaryEncodingConfiguration;
+import com.n26.config.JacksonObjectMapperConfiguration;
+import com.n26.controllers.StatisticsStreamPublisher;
 import com.n26.controllers.TransactionController;
+import com.n26.dto.GroupedStatisticsDto;
+import com.n26.dto.IngestSummaryDto;
 import com.n26.dto.StatisticsDto;
+import com.n26.dto.TransactionCountDto;
 import com.n26.dto.TransactionDto;
 import com.n26.service.TransactionService;
 import com.n26.service.TransactionServiceImpl;
@@ -15,23 +24,34 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.stream.IntStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertTrue;
 
 @EnableAutoConfiguration
 @RunWith(SpringRunner.class)
-@SpringBootTest(classes= {TransactionController.class, TransactionServiceImpl.class} ,webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(classes= {TransactionController.class, TransactionServiceImpl.class, StatisticsStreamPublisher.class, JacksonObjectMapperConfiguration.class, BinaryEncodingConfiguration.class} ,webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 public class TransactionControllerIntegrationTests {
     private static final Logger log = LoggerFactory.getLogger(TransactionControllerIntegrationTests.class);
 
@@ -59,6 +79,21 @@ public class TransactionControllerIntegrationTests {
         assertThat(transactionService.getTransactionSize(), is(0L));
     }
 
+    @Test
+    public void retriedTransactionIsCountedOnce(){
+        try {
+            TransactionDto dto = new TransactionDto(new BigDecimal("100.00"), LocalDateTime.now().minusSeconds(30), null, "tx-1");
+            ResponseEntity first = restTemplate.postForEntity("http://127.0.0.1:"+port+"/transactions", new HttpEntity<>(dto), ResponseEntity.class);
+            ResponseEntity retry = restTemplate.postForEntity("http://127.0.0.1:"+port+"/transactions", new HttpEntity<>(dto), ResponseEntity.class);
+
+            assertThat(first.getStatusCode(), equalTo(HttpStatus.CREATED));
+            assertThat(retry.getStatusCode(), equalTo(HttpStatus.OK));
+            assertThat(transactionService.getTransactionSize(), is(1L));
+        } finally {
+            transactionService.deleteAllTransactions();
+        }
+    }
+
     @Test
     public void futureDateValidationException_return_422(){
         LocalDateTime timeStamp = LocalDateTime.now().plusSeconds(100);
@@ -118,6 +153,90 @@ public class TransactionControllerIntegrationTests {
         assertThat(transactionService.getTransactionSize(), is(0L));
     }
 
+    @Test
+    public void transactionCount(){
+        IntStream.range(0,5).forEach(count->{
+            LocalDateTime timeStamp = LocalDateTime.now().minusSeconds(count);
+            TransactionDto dto = new TransactionDto(new BigDecimal(100.29+ count), timeStamp);
+            HttpEntity<TransactionDto> request = new HttpEntity<>(dto);
+            restTemplate.postForEntity("http://127.0.0.1:"+port+"/transactions", request, ResponseEntity.class);
+        });
+
+        ResponseEntity<TransactionCountDto> response = restTemplate.getForEntity("http://127.0.0.1:"+port+"/transactions/count", TransactionCountDto.class);
+
+        assertThat(response.getStatusCode(), equalTo(HttpStatus.OK));
+        assertThat(response.getBody().getLive(), is(5L));
+        assertThat(response.getBody().getInWindow(), is(5L));
+
+        //Clear]
+        ResponseEntity responseDelete = restTemplate.exchange("http://127.0.0.1:"+port+"/transactions", HttpMethod.DELETE,null, ResponseEntity.class);
+        assertThat(responseDelete.getStatusCode(), equalTo(HttpStatus.NO_CONTENT));
+        assertThat(transactionService.getTransactionSize(), is(0L));
+    }
+
+    @Test
+    public void batchReturnsResultPerItem(){
+        LocalDateTime now = LocalDateTime.now();
+        String body = "[" +
+                "{\"amount\":\"12.30\",\"timestamp\":\"" + now.minusSeconds(5) + "\"}," +
+                "{\"amount\":\"12.30\",\"timestamp\":\"" + now.minusSeconds(100) + "\"}," +
+                "{\"amount\":\"12.30\",\"timestamp\":\"" + now.plusSeconds(100) + "\"}," +
+                "{\"amount\":\"abc\",\"timestamp\":\"" + now.minusSeconds(5) + "\"}," +
+                "{\"amount\":\"12.30\"}," +
+                //Fails inside a nested value, the rest of the item is skipped
+                "{\"amount\":{\"value\":[1,{\"a\":2}]},\"timestamp\":\"" + now.minusSeconds(5) + "\"}," +
+                "{\"amount\":\"7.70\",\"timestamp\":\"" + now.minusSeconds(4) + "\"}" +
+                "]";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        ResponseEntity<String> response = restTemplate.postForEntity("http://127.0.0.1:"+port+"/transactions/batch", new HttpEntity<>(body, headers), String.class);
+
+        assertThat(response.getStatusCode(), equalTo(HttpStatus.OK));
+        assertThat(response.getBody(), is("[{\"result\":\"CREATED\",\"status\":201},{\"result\":\"TOO_OLD\",\"status\":204}," +
+                "{\"result\":\"FUTURE\",\"status\":422},{\"result\":\"INVALID\",\"status\":422}," +
+                "{\"result\":\"MALFORMED\",\"status\":400},{\"result\":\"MALFORMED\",\"status\":400},{\"result\":\"CREATED\",\"status\":201}]"));
+        assertThat(transactionService.getTransactionSize(), is(2L));
+        assertThat(transactionService.getStatistics().getSum(), is(new BigDecimal("20.00")));
+
+        //Not an array at all
+        ResponseEntity<String> badRequest = restTemplate.postForEntity("http://127.0.0.1:"+port+"/transactions/batch", new HttpEntity<>("{}", headers), String.class);
+        assertThat(badRequest.getStatusCode(), equalTo(HttpStatus.BAD_REQUEST));
+
+        //Clear]
+        ResponseEntity responseDelete = restTemplate.exchange("http://127.0.0.1:"+port+"/transactions", HttpMethod.DELETE,null, ResponseEntity.class);
+        assertThat(responseDelete.getStatusCode(), equalTo(HttpStatus.NO_CONTENT));
+        assertThat(transactionService.getTransactionSize(), is(0L));
+    }
+
+    @Test
+    public void ndjsonStreamSkipsMalformedLines(){
+        LocalDateTime now = LocalDateTime.now();
+        StringBuilder body = new StringBuilder();
+        IntStream.range(0, 3000).forEach(count ->
+                body.append("{\"amount\":\"1.50\",\"timestamp\":\"").append(now.minusNanos(count * 1_000_000L)).append("\"}\n"));
+        body.append("{\"amount\":\"1.50\",\"timest\r\n");
+        body.append("\n");
+        body.append("{\"amount\":\"1.50\",\"timestamp\":\"").append(now.minusSeconds(100)).append("\"}\r\n");
+        body.append("not json\n");
+        body.append("{\"amount\":\"2.50\",\"timestamp\":\"").append(now.minusSeconds(1)).append("\"}");
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("application/x-ndjson"));
+        ResponseEntity<IngestSummaryDto> response = restTemplate.postForEntity("http://127.0.0.1:"+port+"/transactions/batch", new HttpEntity<>(body.toString(), headers), IngestSummaryDto.class);
+
+        assertThat(response.getStatusCode(), equalTo(HttpStatus.OK));
+        assertThat(response.getBody().getCreated(), is(3001L));
+        assertThat(response.getBody().getTooOld(), is(1L));
+        assertThat(response.getBody().getMalformed(), is(2L));
+        assertThat(response.getBody().getMalformedLines(), equalTo(Arrays.asList(3001L, 3004L)));
+        assertThat(transactionService.getTransactionSize(), is(3001L));
+        assertThat(transactionService.getStatistics().getSum(), is(new BigDecimal("4502.50")));
+
+        //Clear]
+        ResponseEntity responseDelete = restTemplate.exchange("http://127.0.0.1:"+port+"/transactions", HttpMethod.DELETE,null, ResponseEntity.class);
+        assertThat(responseDelete.getStatusCode(), equalTo(HttpStatus.NO_CONTENT));
+        assertThat(transactionService.getTransactionSize(), is(0L));
+    }
+
     //check that stats are to two decimal
 
     @Test
@@ -147,6 +266,119 @@ public class TransactionControllerIntegrationTests {
         assertThat(transactionService.getTransactionSize(), is(0L));
     }
 
+    @Test
+    public void statisticsStreamPushesChanges() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:"+port+"/statistics/stream").openConnection();
+        connection.setReadTimeout(5000);
+        try (BufferedReader events = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            assertThat(connection.getContentType(), startsWith(MediaType.TEXT_EVENT_STREAM_VALUE));
+            long count = nextStatistics(events).get("count").asLong();
+
+            transactionService.addTransaction(new TransactionDto(new BigDecimal("12.34"), LocalDateTime.now().minusSeconds(1)));
+
+            assertThat(nextStatistics(events).get("count").asLong(), is(count + 1));
+        } finally {
+            connection.disconnect();
+            transactionService.deleteAllTransactions();
+        }
+    }
+
+    @Test
+    public void statisticsForAWindow(){
+        try {
+            transactionService.addTransaction(new TransactionDto(new BigDecimal("10.00"), LocalDateTime.now().minusSeconds(30)));
+
+            ResponseEntity<StatisticsDto> tenSeconds = restTemplate.getForEntity("http://127.0.0.1:"+port+"/statistics?window=10s", StatisticsDto.class);
+            assertThat(tenSeconds.getBody().getCount(), is(0L));
+            ResponseEntity<StatisticsDto> fiveMinutes = restTemplate.getForEntity("http://127.0.0.1:"+port+"/statistics?window=5m", StatisticsDto.class);
+            assertThat(fiveMinutes.getBody().getCount(), is(1L));
+            assertThat(fiveMinutes.getBody().getSum(), is(new BigDecimal("10.00")));
+
+            assertThat(restTemplate.getForEntity("http://127.0.0.1:"+port+"/statistics?window=2h", String.class).getStatusCode(), is(HttpStatus.BAD_REQUEST));
+            assertThat(restTemplate.getForEntity("http://127.0.0.1:"+port+"/statistics?window=soon", String.class).getStatusCode(), is(HttpStatus.BAD_REQUEST));
+        } finally {
+            transactionService.deleteAllTransactions();
+        }
+    }
+
+    @Test
+    public void statisticsSeries() throws IOException {
+        try {
+            transactionService.addTransaction(new TransactionDto(new BigDecimal("10.00"), LocalDateTime.now().minusSeconds(5)));
+            transactionService.addTransaction(new TransactionDto(new BigDecimal("-2.50"), LocalDateTime.now().minusSeconds(5)));
+
+            ResponseEntity<String> response = restTemplate.getForEntity("http://127.0.0.1:"+port+"/statistics/series?step=10s", String.class);
+            JsonNode body = new ObjectMapper().readTree(response.getBody());
+            assertThat(body.get("step").asLong(), is(10_000L));
+            long count = 0;
+            for (JsonNode point : body.get("points")) {
+                count += point.get("count").asLong();
+                if (point.get("count").asLong() == 2) {
+                    assertThat(point.get("sum").asText(), is("7.50"));
+                    assertThat(point.get("avg").asText(), is("3.75"));
+                    assertThat(point.get("min").asText(), is("-2.50"));
+                }
+            }
+            assertThat(count, is(2L));
+
+            assertThat(restTemplate.getForEntity("http://127.0.0.1:"+port+"/statistics/series?step=500ms", String.class).getStatusCode(), is(HttpStatus.BAD_REQUEST));
+        } finally {
+            transactionService.deleteAllTransactions();
+        }
+    }
+
+    @Test
+    public void statisticsGroupedByMerchant(){
+        try {
+            LocalDateTime timestamp = LocalDateTime.now().minusSeconds(5);
+            transactionService.addTransaction(new TransactionDto(new BigDecimal("10.00"), timestamp, "acme"));
+            transactionService.addTransaction(new TransactionDto(new BigDecimal("20.00"), timestamp, "acme"));
+            transactionService.addTransaction(new TransactionDto(new BigDecimal("5.00"), timestamp));
+
+            ResponseEntity<GroupedStatisticsDto> grouped = restTemplate.getForEntity("http://127.0.0.1:"+port+"/statistics?groupBy=merchant", GroupedStatisticsDto.class);
+            assertThat(grouped.getBody().getTop().get("acme").getSum(), is(new BigDecimal("30.00")));
+            assertThat(grouped.getBody().getOther().getCount(), is(0L));
+
+            assertThat(restTemplate.getForEntity("http://127.0.0.1:"+port+"/statistics?groupBy=country", String.class).getStatusCode(), is(HttpStatus.BAD_REQUEST));
+            assertThat(restTemplate.getForEntity("http://127.0.0.1:"+port+"/statistics?groupBy=merchant&window=5m", String.class).getStatusCode(), is(HttpStatus.BAD_REQUEST));
+        } finally {
+            transactionService.deleteAllTransactions();
+        }
+    }
+
+    @Test
+    public void cborTransactionsAndStatistics() throws IOException {
+        ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(JacksonObjectMapperConfiguration.APPLICATION_CBOR);
+        headers.setAccept(Arrays.asList(JacksonObjectMapperConfiguration.APPLICATION_CBOR));
+        try {
+            String timestamp = LocalDateTime.now().minusSeconds(1).toString() + "Z";
+            byte[] transaction = cbor.writeValueAsBytes(cbor.createObjectNode().put("amount", "12.345").put("timestamp", timestamp));
+            ResponseEntity<Void> created = restTemplate.exchange("http://127.0.0.1:"+port+"/transactions", HttpMethod.POST, new HttpEntity<>(transaction, headers), Void.class);
+            assertThat(created.getStatusCode(), equalTo(HttpStatus.CREATED));
+
+            ResponseEntity<byte[]> response = restTemplate.exchange("http://127.0.0.1:"+port+"/statistics", HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+            assertThat(response.getHeaders().getContentType(), is(JacksonObjectMapperConfiguration.APPLICATION_CBOR));
+            JsonNode statistics = cbor.readTree(response.getBody());
+            assertThat(statistics.get("count").asLong(), is(1L));
+            //Amounts keep the same exact string shape as in JSON
+            assertTrue(statistics.get("sum").isTextual());
+            assertThat(statistics.get("sum").asText(), is("12.35"));
+        } finally {
+            transactionService.deleteAllTransactions();
+        }
+    }
+
+    private static JsonNode nextStatistics(BufferedReader events) throws IOException {
+        String line;
+        while ((line = events.readLine()) != null) {
+            if (line.startsWith("data:"))
+                return new ObjectMapper().readTree(line.substring("data:".length()));
+        }
+        throw new EOFException("Statistics stream ended");
+    }
+
     @Test
     public void statistics_after_60secs_of_no_tnx_return_zeros() throws InterruptedException {
         IntStream.rangeClosed(1,3).forEach(count->{
@@ -1,20 +1,25 @@
 package tests.com.n26.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.n26.config.JacksonObjectMapperConfiguration;
 import com.n26.controllers.TransactionController;
 import com.n26.dto.StatisticsDto;
 import com.n26.dto.TransactionDto;
-import com.n26.exception.FutureDateValidationException;
-import com.n26.exception.NotWithInRangeValidationException;
+import com.n26.dto.TransactionResult;
+import com.n26.model.Transaction;
 import com.n26.service.TransactionServiceImpl;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.concurrent.atomic.AtomicReference;
@@ -32,37 +37,46 @@ public class TransactionControllerUnitTests {
     @Mock
     private TransactionServiceImpl transactionService ;
 
-    @Test(expected = FutureDateValidationException.class)
-    public void futureDateValidationException_return_422(){
-        TransactionDto dto = new TransactionDto(new BigDecimal(100.00), LocalDateTime.now().plusSeconds(100));
+    @Test
+    public void futureDate_return_422(){
+        Transaction transaction = new Transaction(10000, System.currentTimeMillis() + 100_000);
 
-        Mockito.when(transactionService.addTransaction(dto)).thenThrow(FutureDateValidationException.class);
-        ResponseEntity responseEntity = transactionController.addTransaction(dto);
+        Mockito.when(transactionService.addTransaction(transaction)).thenReturn(TransactionResult.FUTURE);
+        ResponseEntity responseEntity = transactionController.addTransaction(transaction);
         assertThat(responseEntity.getStatusCode(),is(HttpStatus.UNPROCESSABLE_ENTITY));
-        Mockito.verify(transactionService, Mockito.times(1)).addTransaction(dto);
+        Mockito.verify(transactionService, Mockito.times(1)).addTransaction(transaction);
     }
 
-    @Test(expected = NotWithInRangeValidationException.class)
-    public void notWithInRangeValidationException_return_204(){
-        TransactionDto dto = new TransactionDto(new BigDecimal(100.00), LocalDateTime.now().plusSeconds(100));
+    @Test
+    public void notWithInRange_return_204(){
+        Transaction transaction = new Transaction(10000, System.currentTimeMillis() - 100_000);
 
-        Mockito.when(transactionService.addTransaction(dto)).thenThrow(NotWithInRangeValidationException.class);
-        ResponseEntity responseEntity = transactionController.addTransaction(dto);
+        Mockito.when(transactionService.addTransaction(transaction)).thenReturn(TransactionResult.TOO_OLD);
+        ResponseEntity responseEntity = transactionController.addTransaction(transaction);
         assertThat(responseEntity.getStatusCode(),is(HttpStatus.NO_CONTENT));
-        Mockito.verify(transactionService, Mockito.times(1)).addTransaction(dto);
+        Mockito.verify(transactionService, Mockito.times(1)).addTransaction(transaction);
     }
 
 
+    @Test
+    public void ingestQueueFull_return_503_with_retry_after(){
+        Transaction transaction = new Transaction(10000, System.currentTimeMillis() - 4_000);
+        Mockito.when(transactionService.addTransaction(transaction)).thenReturn(TransactionResult.REJECTED);
+        ResponseEntity responseEntity = transactionController.addTransaction(transaction);
+        assertThat(responseEntity.getStatusCode(),is(HttpStatus.SERVICE_UNAVAILABLE));
+        assertThat(responseEntity.getHeaders().getFirst(HttpHeaders.RETRY_AFTER),is("1"));
+    }
+
     //Test create
     @Test
     public void createTransaction(){
-        TransactionDto dto = new TransactionDto(new BigDecimal(100.00), LocalDateTime.now().minusSeconds(4));
-        Mockito.when(transactionService.addTransaction(dto)).thenReturn(true);
+        Transaction transaction = new Transaction(10000, System.currentTimeMillis() - 4_000);
+        Mockito.when(transactionService.addTransaction(transaction)).thenReturn(TransactionResult.CREATED);
 
-        ResponseEntity responseEntity = transactionController.addTransaction(dto);
+        ResponseEntity responseEntity = transactionController.addTransaction(transaction);
         assertThat(responseEntity.getStatusCode(),is(HttpStatus.CREATED));
 
-        Mockito.verify(transactionService, Mockito.times(1)).addTransaction(dto);
+        Mockito.verify(transactionService, Mockito.times(1)).addTransaction(transaction);
     }
 
     //Test Delete all
@@ -102,11 +116,12 @@ public class TransactionControllerUnitTests {
 
     //Test get stats
     @Test
-    public void statistics(){
+    public void statistics() throws IOException {
         AtomicReference<TransactionDto> dto = new AtomicReference<>();
+        ObjectMapper objectMapper = JacksonObjectMapperConfiguration.configure(new ObjectMapper());
 
         StatisticsDto statisticsDto = new StatisticsDto(new BigDecimal(100.00).setScale(2),new BigDecimal(100.00).setScale(2),new BigDecimal(100.00).setScale(2),new BigDecimal(100.00).setScale(2), 3);
-        Mockito.when(transactionService.getStatistics()).thenReturn(statisticsDto);
+        Mockito.when(transactionService.getStatisticsJson()).thenReturn(objectMapper.writeValueAsBytes(statisticsDto));
 
         IntStream.range(0,3).forEach(count->{
             dto.set(new TransactionDto(new BigDecimal(100.00), LocalDateTime.now().minusSeconds(1)));
@@ -114,7 +129,9 @@ public class TransactionControllerUnitTests {
             transactionService.addTransaction(dto.get());
         });
 
-        StatisticsDto responseEntity = transactionController.statistics();
+        ResponseEntity<?> response = transactionController.statistics(null, null, null);
+        assertThat(response.getHeaders().getContentType(),is(MediaType.APPLICATION_JSON_UTF8));
+        StatisticsDto responseEntity = objectMapper.readValue((byte[]) response.getBody(), StatisticsDto.class);
         assertThat(responseEntity,is(statisticsDto));
 
         assertThat(responseEntity.getCount(),is(statisticsDto.getCount()));
@@ -128,5 +145,23 @@ public class TransactionControllerUnitTests {
         assertTrue(responseEntity.getSum().scale() == 2);
     }
 
+    @Test
+    public void statisticsNegotiatesBinaryEncodings() {
+        StatisticsDto statisticsDto = new StatisticsDto(new BigDecimal("100.00"), new BigDecimal("100.00"), new BigDecimal("100.00"), new BigDecimal("100.00"), 1);
+        Mockito.when(transactionService.getStatistics()).thenReturn(statisticsDto);
+        Mockito.when(transactionService.getStatisticsJson()).thenReturn(new byte[0]);
+
+        ResponseEntity<?> cbor = transactionController.statistics(null, null, "application/cbor");
+        assertThat(cbor.getHeaders().getContentType(), is(JacksonObjectMapperConfiguration.APPLICATION_CBOR));
+        assertThat(cbor.getBody(), is(statisticsDto));
+
+        ResponseEntity<?> smile = transactionController.statistics(null, null, "application/json;q=0.5, application/x-jackson-smile");
+        assertThat(smile.getHeaders().getContentType(), is(JacksonObjectMapperConfiguration.APPLICATION_SMILE));
+
+        //JSON wins when the client ranks it higher or accepts anything
+        assertThat(transactionController.statistics(null, null, "application/cbor;q=0.5, application/json").getHeaders().getContentType(), is(MediaType.APPLICATION_JSON_UTF8));
+        assertThat(transactionController.statistics(null, null, "*/*").getHeaders().getContentType(), is(MediaType.APPLICATION_JSON_UTF8));
+    }
+
 
 }
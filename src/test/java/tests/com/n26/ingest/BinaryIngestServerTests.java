@@ -0,0 +1,128 @@
+package tests.com.n26.ingest;
+
+import com.n26.ingest.BinaryIngestServer;
+import com.n26.service.TransactionBatch;
+import com.n26.service.TransactionServiceImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(SpringRunner.class)
+public class BinaryIngestServerTests {
+    private final AtomicBoolean failNextBatch = new AtomicBoolean();
+    private TransactionServiceImpl transactionService;
+    private BinaryIngestServer server;
+    private int port;
+
+    @Before
+    public void start() throws IOException {
+        transactionService = new TransactionServiceImpl() {
+            @Override
+            public TransactionBatch newBatch() {
+                if (failNextBatch.getAndSet(false))
+                    throw new IllegalStateException("Batch failed");
+                return super.newBatch();
+            }
+        };
+        transactionService.init();
+        server = new BinaryIngestServer(transactionService);
+        port = server.start(0);
+    }
+
+    @After
+    public void stop() {
+        server.stop();
+    }
+
+    @Test
+    public void framesAreAppliedAndAckedOnce() throws IOException {
+        long now = System.currentTimeMillis();
+        try (SocketChannel client = SocketChannel.open(new InetSocketAddress("localhost", port))) {
+            ByteBuffer frames = ByteBuffer.allocate(2 * BinaryIngestServer.HEADER_BYTES + 4 * BinaryIngestServer.RECORD_BYTES);
+            frames.putInt(3 * BinaryIngestServer.RECORD_BYTES)
+                    .putLong(now - 1_000).putLong(1050)
+                    .putLong(now - 1_000).putLong(250)
+                    .putLong(now - 61_000).putLong(999);
+            frames.putInt(BinaryIngestServer.RECORD_BYTES)
+                    .putLong(now + 60_000).putLong(999);
+            frames.flip();
+            while (frames.hasRemaining()) {
+                client.write(frames);
+            }
+
+            ByteBuffer acks = readFully(client, 2 * BinaryIngestServer.ACK_BYTES);
+            assertThat(acks.getInt(), is(3));
+            assertThat(acks.getInt(), is(2));
+            assertThat(acks.getInt(), is(1));
+            assertThat(acks.getInt(), is(0));
+            assertThat(acks.getInt(), is(1));
+            assertThat(acks.getInt(), is(0));
+            assertThat(acks.getInt(), is(0));
+            assertThat(acks.getInt(), is(1));
+        }
+
+        assertThat(transactionService.getStatistics().getCount(), is(2L));
+        assertThat(transactionService.getStatistics().getSum(), is(new BigDecimal("13.00")));
+        assertThat(transactionService.getStatistics().getMin(), is(new BigDecimal("2.50")));
+    }
+
+    @Test
+    public void invalidFrameLengthClosesTheConnection() throws IOException {
+        try (SocketChannel client = SocketChannel.open(new InetSocketAddress("localhost", port))) {
+            ByteBuffer frame = ByteBuffer.allocate(BinaryIngestServer.HEADER_BYTES + 10);
+            frame.putInt(10).put(new byte[10]).flip();
+            client.write(frame);
+
+            assertThat(client.read(ByteBuffer.allocate(BinaryIngestServer.ACK_BYTES)), is(-1));
+        }
+        assertThat(transactionService.getTransactionSize(), is(0L));
+    }
+
+    @Test
+    public void unexpectedFailureOnlyClosesItsConnection() throws IOException {
+        long now = System.currentTimeMillis();
+        try (SocketChannel failing = SocketChannel.open(new InetSocketAddress("localhost", port));
+             SocketChannel other = SocketChannel.open(new InetSocketAddress("localhost", port))) {
+            failNextBatch.set(true);
+            writeFrame(failing, now - 1_000, 100);
+            assertThat(failing.read(ByteBuffer.allocate(BinaryIngestServer.ACK_BYTES)), is(-1));
+
+            writeFrame(other, now - 1_000, 200);
+            ByteBuffer ack = readFully(other, BinaryIngestServer.ACK_BYTES);
+            assertThat(ack.getInt(), is(1));
+            assertThat(ack.getInt(), is(1));
+        }
+        assertThat(transactionService.getStatistics().getSum(), is(new BigDecimal("2.00")));
+    }
+
+    private static void writeFrame(SocketChannel client, long timestampMillis, long amount) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(BinaryIngestServer.HEADER_BYTES + BinaryIngestServer.RECORD_BYTES);
+        frame.putInt(BinaryIngestServer.RECORD_BYTES).putLong(timestampMillis).putLong(amount).flip();
+        while (frame.hasRemaining()) {
+            client.write(frame);
+        }
+    }
+
+    private static ByteBuffer readFully(SocketChannel client, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        while (buffer.hasRemaining()) {
+            if (client.read(buffer) < 0) {
+                throw new IOException("Connection closed after " + buffer.position() + " bytes");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,83 @@
+package tests.com.n26.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.n26.dto.TransactionDto;
+import com.n26.model.Transaction;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.time.ZoneOffset;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(SpringRunner.class)
+public class TransactionDeserializerTests {
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    public void matchesTheStandardDeserialization() throws IOException {
+        String[] amounts = {"\"12.3343\"", "\"12.335\"", "\"-12.335\"", "\"0.005\"", "\"-0.004\"", "\"7\"", "\"7.\"", "\".5\"", "\"+1.10\"",
+                "\" 1.5 \"", "\"1e3\"", "\"92233720368547758.07\"", "\"-92233720368547758.08\"", "12.345", "100"};
+        String[] timestamps = {"\"2018-07-17T09:59:51.312Z\"", "\"2018-07-17T09:59:51.312\"", "\"2018-07-17T09:59\"", "\"2018-07-17T09:59:51\"",
+                "\"2018-07-17T09:59:51.1234567\"", "\"2016-02-29T23:59:59.999\"", "\"1969-12-31T23:59:59.999\"", "\"0001-01-01T00:00\"",
+                "\" 2018-07-17T09:59:51\"", "[2018,7,17,9,59]"};
+        for (String amount : amounts) {
+            for (String timestamp : timestamps) {
+                String json = "{\"amount\":" + amount + ",\"timestamp\":" + timestamp + "}";
+                TransactionDto expected = objectMapper.readValue(json, TransactionDto.class);
+                Transaction transaction = objectMapper.readValue(json, Transaction.class);
+
+                assertThat(json, transaction.getAmount(), is(Transaction.toScaledAmount(expected.getAmount())));
+                assertThat(json, transaction.getTimestampMillis(), is(expected.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli()));
+            }
+        }
+    }
+
+    @Test
+    public void unknownFieldsAreSkipped() throws IOException {
+        Transaction transaction = objectMapper.readValue("{\"id\":{\"a\":[1]},\"timestamp\":\"1970-01-01T00:00:01Z\",\"amount\":\"1.10\"}", Transaction.class);
+
+        assertThat(transaction.getAmount(), is(110L));
+        assertThat(transaction.getTimestampMillis(), is(1000L));
+    }
+
+    @Test
+    public void merchantAndTransactionIdAreOptional() throws IOException {
+        Transaction transaction = objectMapper.readValue("{\"amount\":\"1.10\",\"timestamp\":\"1970-01-01T00:00:01Z\",\"merchant\":\"acme\",\"transactionId\":\"tx-1\"}", Transaction.class);
+
+        assertThat(transaction.getMerchant(), is("acme"));
+        assertThat(transaction.getTransactionId(), is("tx-1"));
+        assertThat(objectMapper.readValue("{\"amount\":\"1.10\",\"timestamp\":\"1970-01-01T00:00:01Z\",\"merchant\":null}", Transaction.class).getMerchant(), is((String) null));
+    }
+
+    @Test(expected = InvalidFormatException.class)
+    public void invalidAmount() throws IOException {
+        objectMapper.readValue("{\"amount\":\"12,30\",\"timestamp\":\"2018-07-17T09:59:51.312Z\"}", Transaction.class);
+    }
+
+    @Test(expected = InvalidFormatException.class)
+    public void amountOutOfRange() throws IOException {
+        objectMapper.readValue("{\"amount\":\"92233720368547758.08\",\"timestamp\":\"2018-07-17T09:59:51.312Z\"}", Transaction.class);
+    }
+
+    @Test(expected = InvalidFormatException.class)
+    public void invalidDate() throws IOException {
+        objectMapper.readValue("{\"amount\":\"12.30\",\"timestamp\":\"2018-02-30T09:59:51.312Z\"}", Transaction.class);
+    }
+
+    @Test(expected = MismatchedInputException.class)
+    public void missingTimestamp() throws IOException {
+        objectMapper.readValue("{\"amount\":\"12.30\"}", Transaction.class);
+    }
+
+    @Test(expected = MismatchedInputException.class)
+    public void wrongAmountType() throws IOException {
+        objectMapper.readValue("{\"amount\":true,\"timestamp\":\"2018-07-17T09:59:51.312Z\"}", Transaction.class);
+    }
+}
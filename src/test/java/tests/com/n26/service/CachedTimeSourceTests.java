@@ -0,0 +1,46 @@
+package tests.com.n26.service;
+
+import com.n26.service.CachedTimeSource;
+import com.n26.service.SystemTimeSource;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+public class CachedTimeSourceTests {
+
+    @Test
+    public void tracksTheSystemClock() throws InterruptedException {
+        CachedTimeSource timeSource = new CachedTimeSource();
+        SystemTimeSource systemTimeSource = new SystemTimeSource();
+        timeSource.start();
+        try {
+            long first = timeSource.currentTimeMillis();
+            //Waits for the ticker rather than assuming it ran within a fixed sleep
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (timeSource.currentTimeMillis() == first && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            long before = systemTimeSource.currentTimeMillis();
+            long cached = timeSource.currentTimeMillis();
+            long after = systemTimeSource.currentTimeMillis();
+
+            assertTrue(cached > first);
+            //Never ahead of the clock, and behind it by far less than a second even on a loaded machine
+            assertThat(cached, lessThanOrEqualTo(after));
+            assertThat(before - cached, lessThan(1000L));
+            assertThat(timeSource.preciseTimeMillis(), greaterThanOrEqualTo(after));
+            assertTrue(Math.abs(timeSource.currentTimeSeconds() - cached / 1000) <= 1);
+        } finally {
+            timeSource.stop();
+        }
+    }
+}
@@ -1,28 +1,43 @@
 package tests.com.n26.service;
 
+import com.n26.dto.GroupedStatisticsDto;
+import com.n26.dto.IngestStatisticsDto;
+import com.n26.dto.PercentileStatisticsDto;
 import com.n26.dto.StatisticsDto;
+import com.n26.dto.StatisticsSnapshotDto;
 import com.n26.dto.TransactionDto;
+import com.n26.dto.TransactionResult;
+import com.n26.exception.AmountOutOfRangeValidationException;
 import com.n26.exception.FutureDateValidationException;
 import com.n26.exception.NotWithInRangeValidationException;
+import com.n26.exception.UnsupportedGroupException;
+import com.n26.exception.UnsupportedWindowException;
+import com.n26.model.StatisticsPoints;
 import com.n26.model.Transaction;
+import com.n26.service.TimeSource;
+import com.n26.service.TransactionBatch;
 import com.n26.service.TransactionServiceImpl;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.IntStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @RunWith(SpringRunner.class)
 public class TransactionServiceTests {
@@ -30,17 +45,29 @@ public class TransactionServiceTests {
     private TransactionServiceImpl transactionServiceMock = new TransactionServiceImpl();
     @InjectMocks
     private TransactionServiceImpl transactionService;
-    @Mock
-    private ConcurrentHashMap<Long, List<Transaction>> transactionStore;
+
+    @Before
+    public void setUp(){
+        transactionService.init();
+    }
+
     @Test
     public void createTransaction(){
         LocalDateTime timeStamp = LocalDateTime.now().minusSeconds(30);
         TransactionDto dto = new TransactionDto(new BigDecimal(100.00), timeStamp);
 
-        Mockito.when(transactionService.addTransaction(dto)).thenReturn(true);
-
         assertTrue(transactionService.addTransaction(dto));
+        assertThat(transactionService.getTransactionSize(),is(1L));
+    }
+
+    @Test
+    public void staleAndFutureTransactionsReturnAResult(){
+        long now = System.currentTimeMillis();
 
+        assertThat(transactionService.addTransaction(new Transaction(100, now - 61_000)), is(TransactionResult.TOO_OLD));
+        assertThat(transactionService.addTransaction(new Transaction(100, now + 60_000)), is(TransactionResult.FUTURE));
+        assertThat(transactionService.addTransaction(new Transaction(100, now - 1_000)), is(TransactionResult.CREATED));
+        assertThat(transactionService.getTransactionSize(), is(1L));
     }
 
     @Test(expected = FutureDateValidationException.class)
@@ -67,9 +94,9 @@ public class TransactionServiceTests {
         AtomicReference<TransactionDto> dto = new AtomicReference<>();
         IntStream.range(0,3).forEach(count->{
             dto.set(new TransactionDto(new BigDecimal(100.00), LocalDateTime.now().minusSeconds(1)));
-            Mockito.when(transactionService.addTransaction(dto.get())).thenReturn(true);
-            transactionService.addTransaction(dto.get());
+            assertTrue(transactionService.addTransaction(dto.get()));
         });
+        assertThat(transactionService.getTransactionSize(),is(3L));
     }
 
     @Test
@@ -82,10 +109,260 @@ public class TransactionServiceTests {
         LocalDateTime timeStamp = LocalDateTime.now().minusSeconds(30);
         TransactionDto dto = new TransactionDto(new BigDecimal(100.00), timeStamp);
 
-        Mockito.when(transactionService.addTransaction(dto)).thenReturn(true);
-
         assertTrue(transactionService.addTransaction(dto));
         assertTrue(transactionService.deleteAllTransactions());
+        assertThat(transactionService.getTransactionSize(),is(0L));
+    }
+
+    @Test
+    public void statisticsFromRingBuffer(){
+        transactionService.addTransaction(new TransactionDto(new BigDecimal("5"), LocalDateTime.now().minusSeconds(30)));
+        transactionService.addTransaction(new TransactionDto(new BigDecimal("3"), LocalDateTime.now().minusSeconds(20)));
+        transactionService.addTransaction(new TransactionDto(new BigDecimal("3"), LocalDateTime.now().minusSeconds(10)));
+
+        StatisticsDto response = transactionService.getStatistics();
+
+        assertThat(response.getCount(),is(3L));
+        assertThat(response.getSum(),is(new BigDecimal("11.00")));
+        assertThat(response.getAvg(),is(new BigDecimal("3.67")));
+        assertThat(response.getMax(),is(new BigDecimal("5.00")));
+        assertThat(response.getMin(),is(new BigDecimal("3.00")));
+    }
+
+    @Test
+    public void averageIsRoundedHalfUpExactly(){
+        transactionService.addTransaction(new TransactionDto(new BigDecimal("5.50"), LocalDateTime.now().minusSeconds(10)));
+        transactionService.addTransaction(new TransactionDto(new BigDecimal("5.51"), LocalDateTime.now().minusSeconds(10)));
+
+        StatisticsDto response = transactionService.getStatistics();
+
+        assertThat(response.getSum(),is(new BigDecimal("11.01")));
+        assertThat(response.getAvg(),is(new BigDecimal("5.51")));
+    }
+
+    @Test
+    public void statisticsJsonIsReusedUntilTheWindowChanges(){
+        transactionService.addTransaction(new TransactionDto(new BigDecimal("5.50"), LocalDateTime.now().minusSeconds(10)));
+
+        byte[] json = transactionService.getStatisticsJson();
+        assertThat(new String(json, StandardCharsets.UTF_8), is("{\"sum\":\"5.50\",\"avg\":\"5.50\",\"max\":\"5.50\",\"min\":\"5.50\",\"count\":1}"));
+        assertTrue(transactionService.getStatisticsJson() == json);
+
+        transactionService.addTransaction(new TransactionDto(new BigDecimal("1.00"), LocalDateTime.now().minusSeconds(10)));
+        assertThat(new String(transactionService.getStatisticsJson(), StandardCharsets.UTF_8), is("{\"sum\":\"6.50\",\"avg\":\"3.25\",\"max\":\"5.50\",\"min\":\"1.00\",\"count\":2}"));
+    }
+
+    @Test
+    public void statisticsForLongerWindowsOutliveTheInterval(){
+        AtomicLong now = new AtomicLong(System.currentTimeMillis());
+        transactionService.setTimeSource(now::get);
+        transactionService.addTransaction(new Transaction(500, now.get() - 30_000));
+        transactionService.addTransaction(new Transaction(125, now.get() - 5_000));
+
+        assertThat(transactionService.getStatistics(10).getCount(), is(1L));
+        assertThat(transactionService.getStatistics(60).getCount(), is(2L));
+
+        //Both have left the interval, the 5 minute window still has them
+        now.addAndGet(120_000);
+        assertThat(transactionService.getStatistics().getCount(), is(0L));
+        StatisticsDto fiveMinutes = transactionService.getStatistics(300);
+        assertThat(fiveMinutes.getCount(), is(2L));
+        assertThat(fiveMinutes.getSum(), is(new BigDecimal("6.25")));
+        assertThat(fiveMinutes.getMin(), is(new BigDecimal("1.25")));
+        assertThat(transactionService.getStatistics(3600).getCount(), is(2L));
+    }
+
+    @Test
+    public void retriedTransactionsAreCountedOnce(){
+        long now = System.currentTimeMillis();
+        assertThat(transactionService.addTransaction(new Transaction(100, now - 1_000, null, "tx-1")), is(TransactionResult.CREATED));
+        assertThat(transactionService.addTransaction(new Transaction(100, now - 1_000, null, "tx-1")), is(TransactionResult.DUPLICATE));
+        try (TransactionBatch batch = transactionService.newBatch()) {
+            assertThat(batch.add(new Transaction(100, now - 1_000, null, "tx-1")), is(TransactionResult.DUPLICATE));
+            assertThat(batch.add(new Transaction(100, now - 1_000, null, "tx-2")), is(TransactionResult.CREATED));
+        }
+        //Without an id every transaction counts
+        transactionService.addTransaction(new Transaction(100, now - 1_000));
+        transactionService.addTransaction(new Transaction(100, now - 1_000));
+
+        assertThat(transactionService.getStatistics().getCount(), is(4L));
+    }
+
+    @Test
+    public void statisticsGroupedByMerchant(){
+        long now = System.currentTimeMillis();
+        transactionService.addTransaction(new Transaction(1000, now - 2_000, "acme"));
+        transactionService.addTransaction(new Transaction(250, now - 1_000, "acme"));
+        transactionService.addTransaction(new Transaction(500, now - 1_000, "globex"));
+        transactionService.addTransaction(new Transaction(700, now - 1_000));
+
+        GroupedStatisticsDto grouped = transactionService.getGroupedStatistics("merchant");
+        assertThat(grouped.getTop().keySet().iterator().next(), is("acme"));
+        assertThat(grouped.getTop().get("acme").getSum(), is(new BigDecimal("12.50")));
+        assertThat(grouped.getTop().get("globex").getCount(), is(1L));
+        assertThat(grouped.getOther().getCount(), is(0L));
+        //Transactions without a merchant are only in the ungrouped statistics
+        assertThat(transactionService.getStatistics().getCount(), is(4L));
+
+        transactionService.deleteAllTransactions();
+        assertThat(transactionService.getGroupedStatistics("merchant").getTop().isEmpty(), is(true));
+    }
+
+    @Test(expected = UnsupportedGroupException.class)
+    public void groupingByAnotherDimensionIsRejected(){
+        transactionService.getGroupedStatistics("account");
+    }
+
+    @Test
+    public void percentileStatisticsReportTheirError(){
+        long now = System.currentTimeMillis();
+        transactionService.addTransaction(new Transaction(1000, now - 2_000));
+        transactionService.addTransaction(new Transaction(2000, now - 1_000));
+        transactionService.addTransaction(new Transaction(100_000, now - 1_000));
+
+        PercentileStatisticsDto percentiles = transactionService.getPercentileStatistics();
+        assertThat(percentiles.getCount(), is(3L));
+        assertThat(percentiles.getRelativeError(), is(0.01));
+        assertThat(percentiles.getP50().doubleValue(), closeTo(20, 0.2));
+        //The 99th is at rank 0.99 * (3 - 1), which is still the second amount
+        assertThat(percentiles.getP99().doubleValue(), closeTo(20, 0.2));
+    }
+
+    @Test
+    public void seriesCoversTheWindowInSteps(){
+        AtomicLong now = new AtomicLong(1_000_000_500L);
+        transactionService.setTimeSource(now::get);
+        transactionService.addTransaction(new Transaction(500, now.get() - 30_000));
+        transactionService.addTransaction(new Transaction(125, now.get() - 5_000));
+
+        StatisticsPoints series = transactionService.getStatisticsSeries(10, 60);
+        assertThat(series.size(), is(7));
+        assertThat(series.getStartMillis(0), is(999_940_000L));
+        assertThat(series.getCount(3), is(1L));
+        assertThat(series.getScaledSum(5), is(125L));
+    }
+
+    @Test(expected = UnsupportedWindowException.class)
+    public void seriesStepBeyondTheWindowIsRejected(){
+        transactionService.getStatisticsSeries(120, 60);
+    }
+
+    @Test(expected = UnsupportedWindowException.class)
+    public void windowBeyondTheMaximumIsRejected(){
+        transactionService.getStatistics(3601);
+    }
+
+    @Test
+    public void queuedTimestampAheadOfTheCachedClockIsAppliedOnce() throws InterruptedException {
+        AtomicLong cached = new AtomicLong(1_000_000L);
+        TransactionServiceImpl queuedService = new TransactionServiceImpl();
+        //The cached clock lags the precise one by a tick
+        queuedService.setTimeSource(new TimeSource() {
+            @Override
+            public long currentTimeMillis() {
+                return cached.get();
+            }
+
+            @Override
+            public long preciseTimeMillis() {
+                return cached.get() + 2;
+            }
+        });
+        ReflectionTestUtils.setField(queuedService, "ingestQueueSize", 16);
+        queuedService.init();
+        try {
+            assertThat(queuedService.addTransaction(new Transaction(100, 1_000_001L)), is(TransactionResult.CREATED));
+            assertThat(queuedService.addTransaction(new Transaction(100, 999_995L)), is(TransactionResult.CREATED));
+            assertThat(queuedService.addTransaction(new Transaction(100, 999_996L)), is(TransactionResult.CREATED));
+            //A failed flush used to hand the same entries back to the writer, which counted them again on every retry
+            Thread.sleep(50);
+            cached.addAndGet(2);
+            for (int i = 0; i < 100 && queuedService.getTransactionSize() < 3; i++) {
+                Thread.sleep(10);
+            }
+            assertThat(queuedService.getIngestStatistics().getDrained(), is(3L));
+            assertThat(queuedService.getTransactionSize(), is(3L));
+            assertThat(queuedService.getStatistics().getSum(), is(new BigDecimal("3.00")));
+            assertThat(queuedService.getPercentileStatistics().getCount(), is(3L));
+        } finally {
+            queuedService.destroy();
+        }
+    }
+
+    @Test
+    public void queuedTransactionsAreAppliedByTheWriter() throws InterruptedException {
+        TransactionServiceImpl queuedService = new TransactionServiceImpl();
+        ReflectionTestUtils.setField(queuedService, "ingestQueueSize", 16);
+        queuedService.init();
+        try {
+            IntStream.range(0, 10).forEach(count ->
+                    assertTrue(queuedService.addTransaction(new TransactionDto(new BigDecimal("2.50"), LocalDateTime.now().minusSeconds(10)))));
+            for (int i = 0; i < 100 && queuedService.getTransactionSize() < 10; i++) {
+                Thread.sleep(10);
+            }
+
+            assertThat(queuedService.getStatistics().getSum(), is(new BigDecimal("25.00")));
+            IngestStatisticsDto ingest = queuedService.getIngestStatistics();
+            assertThat(ingest.getQueueCapacity(), is(16L));
+            assertThat(ingest.getDrained(), is(10L));
+            assertThat(ingest.getQueueDepth(), is(0L));
+
+            //Validation still happens on the request thread
+            try {
+                queuedService.addTransaction(new TransactionDto(new BigDecimal("2.50"), LocalDateTime.now().minusSeconds(100)));
+                fail();
+            } catch (NotWithInRangeValidationException e) {
+                assertThat(queuedService.getIngestStatistics().getDrained(), is(10L));
+            }
+
+            queuedService.deleteAllTransactions();
+            assertThat(queuedService.getTransactionSize(), is(0L));
+        } finally {
+            queuedService.destroy();
+        }
+    }
+
+    @Test
+    public void statisticsServedFromRefreshedSnapshot() throws InterruptedException {
+        TransactionServiceImpl snapshotService = new TransactionServiceImpl();
+        ReflectionTestUtils.setField(snapshotService, "refreshMs", 20L);
+        snapshotService.init();
+        try {
+            snapshotService.addTransaction(new TransactionDto(new BigDecimal("5"), LocalDateTime.now().minusSeconds(10)));
+            Thread.sleep(200);
+
+            StatisticsSnapshotDto snapshot = snapshotService.getStatisticsSnapshot();
+            assertThat(snapshot.getRefreshMs(), is(20L));
+            assertTrue(snapshot.getAgeMs() <= 200);
+            assertThat(snapshot.getStatistics().getCount(), is(1L));
+            assertThat(snapshotService.getStatistics().getSum(), is(new BigDecimal("5.00")));
+
+            //Clearing refreshes straight away instead of waiting for the next tick
+            snapshotService.deleteAllTransactions();
+            assertThat(snapshotService.getStatistics().getCount(), is(0L));
+        } finally {
+            snapshotService.destroy();
+        }
+    }
+
+    @Test
+    public void snapshotAgeFollowsTheTimeSource(){
+        AtomicLong now = new AtomicLong(System.currentTimeMillis());
+        TransactionServiceImpl snapshotService = new TransactionServiceImpl();
+        ReflectionTestUtils.setField(snapshotService, "refreshMs", 60_000L);
+        snapshotService.setTimeSource(now::get);
+        snapshotService.init();
+        try {
+            now.addAndGet(5_000);
+            assertThat(snapshotService.getStatisticsSnapshot().getAgeMs(), is(5_000L));
+        } finally {
+            snapshotService.destroy();
+        }
+    }
+
+    @Test(expected = AmountOutOfRangeValidationException.class)
+    public void amountOutOfRangeValidationException(){
+        transactionService.addTransaction(new TransactionDto(new BigDecimal("1E+20"), LocalDateTime.now().minusSeconds(10)));
     }
 
     @Test
@@ -0,0 +1,120 @@
+package tests.com.n26.store;
+
+import com.n26.store.DimensionStatistics;
+import com.n26.store.StatisticsBucket;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+public class DimensionStatisticsTests {
+
+    @Test
+    public void topKeysAreExactAndTheRestIsOther(){
+        DimensionStatistics merchants = new DimensionStatistics(60, 2);
+        long now = 1_000_000;
+        merchants.add("a", now, 100, now);
+        merchants.add("b", now, 200, now);
+        merchants.add("b", now, 300, now);
+        //Both slots are taken by keys with more transactions
+        merchants.add("c", now, 400, now);
+
+        Map<String, StatisticsBucket> top = new LinkedHashMap<>();
+        StatisticsBucket other = merchants.aggregate(now, top);
+        assertThat(top.keySet(), contains("b", "a"));
+        assertThat(top.get("b").getSum().sum().longValue(), is(500L));
+        assertThat(top.get("b").getMin(), is(200L));
+        assertThat(other.getCount(), is(1L));
+        assertThat(other.getMax(), is(400L));
+    }
+
+    @Test
+    public void heavyKeysAreTrackedAmongManyLightOnes(){
+        DimensionStatistics merchants = new DimensionStatistics(60, 2);
+        long now = 1_000_000;
+        for (int i = 0; i < 100; i++) {
+            merchants.add("b", now, 2, now);
+        }
+        //Many distinct keys with one transaction each, then a second heavy key
+        for (int i = 0; i < 10_000; i++) {
+            merchants.add("key-" + i, now, 1, now);
+        }
+        for (int i = 0; i < 100; i++) {
+            merchants.add("c", now, 3, now);
+        }
+
+        Map<String, StatisticsBucket> top = new LinkedHashMap<>();
+        StatisticsBucket other = merchants.aggregate(now, top);
+        assertThat(top.keySet(), contains("b", "c"));
+        assertThat(top.get("b").getCount(), is(100L));
+        //c is exact from the moment it was tracked, displaced keys stay in other with everything they had
+        long c = top.get("c").getCount();
+        assertThat(c + other.getCount(), is(10_100L));
+        assertThat(top.get("c").getSum().sum().longValue() + other.getSum().sum().longValue(), is(10_300L));
+    }
+
+    @Test
+    public void concurrentAddsAreAllCountedWhileKeysAreDisplaced() throws InterruptedException {
+        DimensionStatistics merchants = new DimensionStatistics(60, 4);
+        long now = 1_000_000;
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.execute(() -> {
+                //Light keys keep competing for the lowest slot while the heavy ones are added
+                for (int i = 0; i < 20_000; i++) {
+                    String key = i % 2 == 0 ? "heavy-" + (i % 6) : "light-" + thread + "-" + i;
+                    merchants.add(key, now, 1, now);
+                }
+            });
+        }
+        threads.shutdown();
+        assertTrue(threads.awaitTermination(30, TimeUnit.SECONDS));
+
+        Map<String, StatisticsBucket> top = new LinkedHashMap<>();
+        StatisticsBucket other = merchants.aggregate(now, top);
+        long count = other.getCount();
+        for (StatisticsBucket bucket : top.values()) {
+            count += bucket.getCount();
+        }
+        assertThat(count, is(80_000L));
+        //Which heavy key is ahead depends on when each was tracked
+        assertTrue(top.keySet().containsAll(Arrays.asList("heavy-0", "heavy-2", "heavy-4")));
+    }
+
+    @Test
+    public void keysExpireWithTheWindow(){
+        DimensionStatistics merchants = new DimensionStatistics(60, 2);
+        assertTrue(merchants.add("a", 1_000_000, 100, 1_000_000));
+        assertTrue(merchants.add("a", 1_030_000, 200, 1_030_000));
+
+        Map<String, StatisticsBucket> top = new LinkedHashMap<>();
+        merchants.aggregate(1_061_000, top);
+        assertThat(top.get("a").getCount(), is(1L));
+        assertThat(top.get("a").getMin(), is(200L));
+        assertFalse(merchants.add("a", 1_000_000, 100, 1_061_000));
+
+        //A key without transactions in the window is left out
+        top.clear();
+        merchants.aggregate(1_200_000, top);
+        assertTrue(top.isEmpty());
+
+        merchants.add("b", 1_200_000, 100, 1_200_000);
+        merchants.clear();
+        assertThat(merchants.aggregate(1_200_000, top).getCount(), is(0L));
+        assertTrue(top.isEmpty());
+    }
+}
@@ -0,0 +1,108 @@
+package tests.com.n26.store;
+
+import com.n26.store.IngestRingBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+public class IngestRingBufferTests {
+
+    @Test
+    public void fullQueueRejectsUntilDrained(){
+        IngestRingBuffer queue = new IngestRingBuffer(3);
+        assertThat(queue.capacity(), is(4));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(1000 + i, i));
+        }
+        assertFalse(queue.offer(2000, 9));
+        assertThat(queue.rejected(), is(1L));
+        assertThat(queue.depth(), is(4L));
+
+        List<Long> amounts = new ArrayList<>();
+        assertThat(queue.drain((timestampMillis, amount, enqueuedNanos) -> amounts.add(amount), 2), is(2));
+        assertTrue(queue.offer(2000, 9));
+        queue.drain((timestampMillis, amount, enqueuedNanos) -> amounts.add(amount), 10);
+
+        assertThat(amounts.toString(), is("[0, 1, 2, 3, 9]"));
+        assertThat(queue.depth(), is(0L));
+        assertThat(queue.drained(), is(5L));
+    }
+
+    @Test
+    public void failingConsumerDoesNotSeeAnEntryTwice(){
+        IngestRingBuffer queue = new IngestRingBuffer(4);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.offer(1000 + i, i));
+        }
+
+        List<Long> amounts = new ArrayList<>();
+        try {
+            queue.drain((timestampMillis, amount, enqueuedNanos) -> {
+                amounts.add(amount);
+                if (amount == 1)
+                    throw new IllegalStateException("boom");
+            }, 10);
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(queue.drained(), is(2L));
+        }
+        queue.drain((timestampMillis, amount, enqueuedNanos) -> amounts.add(amount), 10);
+
+        assertThat(amounts.toString(), is("[0, 1, 2]"));
+        assertThat(queue.depth(), is(0L));
+    }
+
+    @Test
+    public void concurrentProducersLoseNothing() throws Exception {
+        int threads = 8;
+        int offersPerThread = 200_000;
+        IngestRingBuffer queue = new IngestRingBuffer(1024);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 1; i <= offersPerThread; i++) {
+                    //Spin on a full queue like a client retrying after a 503
+                    while (!queue.offer(i, i)) {
+                        Thread.yield();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long[] sum = new long[2];
+        start.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (sum[1] < (long) threads * offersPerThread && System.nanoTime() < deadline) {
+            queue.drain((timestampMillis, amount, enqueuedNanos) -> {
+                sum[0] += amount;
+                sum[1]++;
+            }, 256);
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertThat(sum[1], is((long) threads * offersPerThread));
+        assertThat(sum[0], is(threads * (long) offersPerThread * (offersPerThread + 1) / 2));
+    }
+}
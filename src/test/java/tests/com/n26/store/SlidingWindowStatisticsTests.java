@@ -0,0 +1,340 @@
+package tests.com.n26.store;
+
+import com.n26.store.QuantileSketch;
+import com.n26.store.SlidingWindowStatistics;
+import com.n26.store.StatisticsBatch;
+import com.n26.store.StatisticsBucket;
+import com.n26.store.StatisticsSeries;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+public class SlidingWindowStatisticsTests {
+
+    @Test
+    public void runningTotalsFollowTheWindow(){
+        SlidingWindowStatistics window = new SlidingWindowStatistics(60, 1000);
+        assertTrue(window.add(1_000_000, 900, 1_010_000));
+        assertTrue(window.add(1_005_000, 100, 1_010_000));
+        assertTrue(window.add(1_030_000, 400, 1_030_000));
+
+        assertThat(window.getCount(), is(3L));
+        assertThat(window.getSum().sum().longValue(), is(1400L));
+        assertThat(window.getMax(), is(900L));
+        assertThat(window.getMin(), is(100L));
+
+        //The bucket of 1_000_000 expires, so the max has to come back from the remaining buckets
+        window.advance(1_061_000);
+        assertThat(window.getCount(), is(2L));
+        assertThat(window.getSum().sum().longValue(), is(500L));
+        assertThat(window.getMax(), is(400L));
+        assertThat(window.getMin(), is(100L));
+
+        window.advance(1_066_000);
+        assertThat(window.getCount(), is(1L));
+        assertThat(window.getMin(), is(400L));
+
+        window.advance(1_200_000);
+        assertThat(window.getCount(), is(0L));
+        assertThat(window.getMax(), is(0L));
+        assertThat(window.getMin(), is(0L));
+    }
+
+    @Test
+    public void trendingExtremesFollowEveryEviction(){
+        SlidingWindowStatistics rising = new SlidingWindowStatistics(1, 100);
+        SlidingWindowStatistics falling = new SlidingWindowStatistics(1, 100);
+        for (long tick = 0; tick < 50; tick++) {
+            rising.add(1_000_000 + tick * 100, tick, 1_000_000 + tick * 100);
+            falling.add(1_000_000 + tick * 100, -tick, 1_000_000 + tick * 100);
+
+            //Every tick evicts the window's extreme, the ten ticks before this one remain
+            assertThat(rising.getMin(), is(Math.max(0, tick - 10)));
+            assertThat(rising.getMax(), is(tick));
+            assertThat(falling.getMax(), is(-Math.max(0, tick - 10)));
+            assertThat(falling.getMin(), is(-tick));
+        }
+    }
+
+    @Test
+    public void expiryIsExactToTheMillisecond(){
+        SlidingWindowStatistics window = new SlidingWindowStatistics(60, 100, 3600);
+        assertTrue(window.add(1_000_005, 100, 1_000_005));
+        assertTrue(window.add(1_000_050, 300, 1_000_050));
+
+        //Both are still within the window
+        window.advance(1_060_005);
+        assertThat(window.getCount(), is(2L));
+        //The first leaves the window while its bucket still has later milliseconds inside it
+        window.advance(1_060_006);
+        assertThat(window.getCount(), is(1L));
+        assertThat(window.getSum().sum().longValue(), is(300L));
+        assertThat(window.getMax(), is(300L));
+        assertThat(window.getMin(), is(300L));
+        assertFalse(window.add(1_000_005, 100, 1_060_006));
+        assertThat(window.aggregate(60_000, 1_060_006).getCount(), is(1L));
+        //The expired millisecond is in the rollup, so a longer window still has both exactly once
+        assertThat(window.aggregate(120_000, 1_060_006).getCount(), is(2L));
+
+        window.advance(1_060_051);
+        assertThat(window.getCount(), is(0L));
+        assertThat(window.getEvictedTransactions(), is(2L));
+    }
+
+    @Test
+    public void concurrentWritersKeepTheTotalsExact() throws Exception {
+        SlidingWindowStatistics window = new SlidingWindowStatistics(1, 100);
+        long start = 1_000_000;
+        AtomicLong clock = new AtomicLong();
+        //Successful adds per millisecond since start
+        AtomicLongArray added = new AtomicLongArray(110_000);
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 200_000; i++) {
+                    //Each writer crosses into new milliseconds while the others are still adding to older ones
+                    long nowMillis = start + clock.incrementAndGet() / 8;
+                    long timestampMillis = nowMillis - ThreadLocalRandom.current().nextInt(1100);
+                    if (window.add(timestampMillis, 1, nowMillis)) {
+                        added.incrementAndGet((int) (timestampMillis - start + 2000));
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        long nowMillis = start + clock.get() / 8 + 1;
+        long expected = 0;
+        long total = 0;
+        for (int i = 0; i < added.length(); i++) {
+            total += added.get(i);
+            if (i - 2000 + start >= nowMillis - 1000)
+                expected += added.get(i);
+        }
+        window.advance(nowMillis);
+        assertThat(window.getCount(), is(expected));
+        assertThat(window.getSum().sum().longValue(), is(expected));
+
+        window.advance(nowMillis + 2000);
+        assertThat(window.getCount(), is(0L));
+        assertThat(window.getSum().sum().longValue(), is(0L));
+        assertThat(window.getEvictedTransactions(), is(total));
+    }
+
+    @Test
+    public void evictionSealsBucketsAndCountsThem(){
+        SlidingWindowStatistics window = new SlidingWindowStatistics(60, 100);
+        window.add(1_000_000, 100, 1_000_000);
+        window.add(1_000_050, 200, 1_000_050);
+        window.add(1_030_000, 300, 1_030_000);
+
+        window.advance(1_060_100);
+
+        assertThat(window.getEvictedBuckets(), is(1L));
+        assertThat(window.getEvictedTransactions(), is(2L));
+        assertThat(window.getRingBuffer().size(), is(1L));
+    }
+
+    @Test
+    public void expiredTickIsRejected(){
+        SlidingWindowStatistics window = new SlidingWindowStatistics(60, 100);
+        window.advance(1_100_000);
+
+        assertFalse(window.add(1_039_000, 500, 1_099_000));
+        assertThat(window.getCount(), is(0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void granularityMustDivideTheInterval(){
+        new SlidingWindowStatistics(60, 7);
+    }
+
+    @Test
+    public void clearResetsTotals(){
+        SlidingWindowStatistics window = new SlidingWindowStatistics(60, 100);
+        window.add(1_000_000, 900, 1_010_000);
+        window.clear();
+
+        assertThat(window.getCount(), is(0L));
+        assertThat(window.getSum().sum().longValue(), is(0L));
+        assertTrue(window.add(1_001_000, 200, 1_010_000));
+        assertThat(window.getMax(), is(200L));
+    }
+
+    @Test
+    public void batchAppliesRunsPerTick(){
+        SlidingWindowStatistics window = new SlidingWindowStatistics(60, 1000);
+        try (StatisticsBatch batch = new StatisticsBatch(window)) {
+            batch.add(1_000_100, 100, 1_010_000);
+            batch.add(1_000_900, 700, 1_010_000);
+            //Applied once the run moves on to another tick
+            batch.add(1_001_000, Long.MAX_VALUE, 1_010_000);
+            assertThat(window.getCount(), is(2L));
+            batch.add(1_001_500, 5, 1_010_000);
+        }
+
+        assertThat(window.getCount(), is(4L));
+        assertThat(window.getSum().sum().toString(), is("9223372036854776612"));
+        assertThat(window.getMax(), is(Long.MAX_VALUE));
+        assertThat(window.getMin(), is(5L));
+        assertThat(window.getRingBuffer().size(), is(4L));
+    }
+
+    @Test
+    public void batchRunThatExpiresBeforeItIsAppliedIsEvicted(){
+        SlidingWindowStatistics window = new SlidingWindowStatistics(60, 100, 3600);
+        StatisticsBatch batch = new StatisticsBatch(window);
+        batch.add(1_000_000, 100, 1_059_000);
+        batch.add(1_000_000, 300, 1_059_000);
+
+        //The run's millisecond leaves the window before the batch is flushed
+        window.advance(1_061_000);
+        batch.flush();
+
+        assertThat(window.getCount(), is(0L));
+        assertThat(window.getEvictedTransactions(), is(2L));
+        StatisticsBucket fiveMinutes = window.aggregate(300_000, 1_061_000);
+        assertThat(fiveMinutes.getCount(), is(2L));
+        assertThat(fiveMinutes.getSum().sum().longValue(), is(400L));
+        assertThat(fiveMinutes.getMax(), is(300L));
+    }
+
+    @Test
+    public void windowsBeyondTheIntervalReadTheRollup(){
+        //Starts on a whole minute
+        long start = 6_000_000;
+        SlidingWindowStatistics window = new SlidingWindowStatistics(60, 1, 3600);
+        assertTrue(window.add(start, 100, start));
+        assertTrue(window.add(start + 90_000, 200, start + 90_000));
+        assertTrue(window.add(start + 800_000, 300, start + 800_000));
+        assertTrue(window.add(start + 1_000_000, 400, start + 1_000_000));
+        long now = start + 1_030_000;
+
+        assertThat(window.aggregate(10_000, now).getCount(), is(0L));
+        assertThat(window.aggregate(60_000, now).getSum().sum().longValue(), is(400L));
+
+        StatisticsBucket hour = window.aggregate(3_600_000, now);
+        assertThat(hour.getCount(), is(4L));
+        assertThat(hour.getSum().sum().longValue(), is(1000L));
+        assertThat(hour.getMax(), is(400L));
+        assertThat(hour.getMin(), is(100L));
+
+        //Starts within the minute of the 200, which is then read per second
+        StatisticsBucket partialMinute = window.aggregate(now - start - 95_000, now);
+        assertThat(partialMinute.getCount(), is(2L));
+        assertThat(partialMinute.getMin(), is(300L));
+        assertThat(window.aggregate(now - start - 85_000, now).getCount(), is(3L));
+
+        window.clear();
+        assertThat(window.aggregate(3_600_000, now).getCount(), is(0L));
+    }
+
+    @Test
+    public void seriesReadsTheIntervalAndTheRollup(){
+        long start = 6_000_000;
+        SlidingWindowStatistics window = new SlidingWindowStatistics(60, 1, 3600);
+        window.add(start + 100, 100, start + 100);
+        window.add(start + 900, -300, start + 900);
+        window.add(start + 100_000, 200, start + 100_000);
+        window.add(start + 130_500, Long.MAX_VALUE, start + 130_500);
+        window.add(start + 130_600, Long.MAX_VALUE, start + 130_600);
+        long now = start + 150_000;
+
+        //Ten second steps over three minutes, the first step of the window starts at start - 30s
+        StatisticsSeries series = new StatisticsSeries(start - 30_000, 10_000, 19);
+        window.series(series, now);
+        assertThat(series.getCount(3), is(2L));
+        assertThat(series.getScaledSum(3), is(-200L));
+        assertThat(series.getMax(3), is(100L));
+        assertThat(series.getMin(3), is(-300L));
+        assertThat(series.getCount(13), is(1L));
+        assertThat(series.getCount(4), is(0L));
+        //Two maximal amounts only fit the split sum
+        assertFalse(series.isSumScaled(16));
+        assertThat(series.getSum(16).toString(), is("18446744073709551614"));
+        assertTrue(series.isSumScaled(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowBeyondTheRollupIsRejected(){
+        new SlidingWindowStatistics(60, 1000, 300).aggregate(301_000, 1_000_000);
+    }
+
+    @Test
+    public void percentilesAreWithinTheRelativeAccuracy(){
+        SlidingWindowStatistics window = new SlidingWindowStatistics(60, 1);
+        long now = 1_000_000;
+        //1.00 to 100.00 across the window, so rank n holds exactly n * 100
+        for (int i = 1; i <= 100; i++) {
+            assertTrue(window.add(now - i * 500, i * 100L, now));
+        }
+        long[] counts = QuantileSketch.newCounts();
+        long total = window.mergeSketches(counts, now);
+
+        assertThat(total, is(100L));
+        assertWithinAccuracy(QuantileSketch.quantile(counts, total, 0.50), 5000);
+        assertWithinAccuracy(QuantileSketch.quantile(counts, total, 0.95), 9500);
+        assertWithinAccuracy(QuantileSketch.quantile(counts, total, 0.99), 9900);
+        assertWithinAccuracy(QuantileSketch.quantile(counts, total, 1), 10_000);
+    }
+
+    @Test
+    public void percentilesKeepTheSignOfAmounts(){
+        SlidingWindowStatistics window = new SlidingWindowStatistics(60, 1000);
+        window.add(1_000_000, -5000, 1_000_000);
+        window.add(1_000_000, 0, 1_000_000);
+        window.add(1_000_000, 7000, 1_000_000);
+        long[] counts = QuantileSketch.newCounts();
+        long total = window.mergeSketches(counts, 1_000_000);
+
+        assertWithinAccuracy(QuantileSketch.quantile(counts, total, 0), -5000);
+        assertThat(QuantileSketch.quantile(counts, total, 0.5), is(0L));
+        assertWithinAccuracy(QuantileSketch.quantile(counts, total, 1), 7000);
+        assertThat(QuantileSketch.quantile(QuantileSketch.newCounts(), 0, 0.5), is(0L));
+    }
+
+    @Test
+    public void percentilesFollowTheWindow(){
+        SlidingWindowStatistics window = new SlidingWindowStatistics(60, 100);
+        window.add(1_000_000, 100, 1_000_000);
+        try (StatisticsBatch batch = new StatisticsBatch(window)) {
+            batch.add(1_030_000, 200, 1_030_000);
+        }
+        assertThat(window.mergeSketches(QuantileSketch.newCounts(), 1_030_000), is(2L));
+
+        //The second of 1_000_000 has fully expired, its sketch now belongs to a later second
+        assertThat(window.mergeSketches(QuantileSketch.newCounts(), 1_061_000), is(1L));
+        assertTrue(window.add(1_061_000, 300, 1_061_000));
+        long[] counts = QuantileSketch.newCounts();
+        assertThat(window.mergeSketches(counts, 1_061_000), is(2L));
+        assertWithinAccuracy(QuantileSketch.quantile(counts, 2, 0), 200);
+
+        window.clear();
+        assertThat(window.mergeSketches(QuantileSketch.newCounts(), 1_061_000), is(0L));
+    }
+
+    private static void assertWithinAccuracy(long actual, long expected){
+        assertThat((double) Math.abs(actual - expected), lessThanOrEqualTo(Math.abs(expected) * QuantileSketch.RELATIVE_ACCURACY));
+    }
+}
@@ -0,0 +1,138 @@
+package tests.com.n26.store;
+
+import com.n26.store.StatisticsBucket;
+import com.n26.store.StatisticsRingBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+public class StatisticsRingBufferTests {
+
+    @Test
+    public void aggregatesOnlyTicksInsideTheWindow(){
+        StatisticsRingBuffer ringBuffer = new StatisticsRingBuffer(60);
+        ringBuffer.add(1000, 500);
+        ringBuffer.add(1030, 300);
+        ringBuffer.add(1059, 450);
+
+        StatisticsBucket aggregate = ringBuffer.aggregate(1000, 1060);
+
+        assertThat(aggregate.getCount(), is(2L));
+        assertThat(aggregate.getSum().sum().longValue(), is(750L));
+        assertThat(aggregate.getMax(), is(450L));
+        assertThat(aggregate.getMin(), is(300L));
+    }
+
+    @Test
+    public void slotIsReusedForNewerTick(){
+        StatisticsRingBuffer ringBuffer = new StatisticsRingBuffer(60);
+        ringBuffer.add(1000, 500);
+        ringBuffer.add(1061, 200);
+
+        assertThat(ringBuffer.size(), is(1L));
+        assertThat(ringBuffer.aggregate(1001, 1061).getSum().sum().longValue(), is(200L));
+    }
+
+    @Test
+    public void olderTickDoesNotOverwriteNewerSlot(){
+        StatisticsRingBuffer ringBuffer = new StatisticsRingBuffer(60);
+        assertTrue(ringBuffer.add(1061, 200));
+        assertFalse(ringBuffer.add(1000, 500));
+
+        assertThat(ringBuffer.size(), is(1L));
+    }
+
+    @Test
+    public void clearEmptiesEveryBucket(){
+        StatisticsRingBuffer ringBuffer = new StatisticsRingBuffer(60);
+        ringBuffer.add(1000, 500);
+        ringBuffer.add(1001, 500);
+        ringBuffer.clear();
+
+        assertThat(ringBuffer.size(), is(0L));
+        assertThat(ringBuffer.aggregate(0, 2000).getCount(), is(0L));
+    }
+
+    @Test
+    public void concurrentWritesToSameTickAreNotLost() throws Exception {
+        int threads = 8;
+        int insertsPerThread = 500_000;
+        StatisticsRingBuffer ringBuffer = new StatisticsRingBuffer(60);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < insertsPerThread; i++) {
+                    //Two ticks in two slots, so every writer also races to install the first bucket of each
+                    ringBuffer.add(1000 + (i & 1), i == 0 ? thread + 1 : 1);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        StatisticsBucket aggregate = ringBuffer.aggregate(999, 1001);
+        long expectedCount = (long) threads * insertsPerThread;
+        assertThat(aggregate.getCount(), is(expectedCount));
+        //Thread t writes t + 1 once instead of 1, adding t in total
+        assertThat(aggregate.getSum().sum().longValue(), is(expectedCount + threads * (threads - 1) / 2));
+        assertThat(aggregate.getMax(), is((long) threads));
+        assertThat(aggregate.getMin(), is(1L));
+    }
+
+    @Test
+    public void writesRacingAResetAreNotLost() throws Exception {
+        int threads = 8;
+        int ticks = 20_000;
+        //Three slots, so writers keep resetting buckets in place while others still add to them
+        StatisticsRingBuffer ringBuffer = new StatisticsRingBuffer(2);
+        AtomicLongArray added = new AtomicLongArray(ticks);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int tick = 0; tick < ticks; tick++) {
+                    if (ringBuffer.add(tick, 1)) {
+                        added.incrementAndGet(tick);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        for (int tick = ticks - 3; tick < ticks; tick++) {
+            assertThat(ringBuffer.aggregate(tick - 1, tick).getCount(), is(added.get(tick)));
+        }
+    }
+}
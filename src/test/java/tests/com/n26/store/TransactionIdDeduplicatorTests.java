@@ -0,0 +1,61 @@
+package tests.com.n26.store;
+
+import com.n26.store.TransactionIdDeduplicator;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+public class TransactionIdDeduplicatorTests {
+
+    @Test
+    public void retriesOfTheSameSecondAreCaught(){
+        TransactionIdDeduplicator deduplicator = new TransactionIdDeduplicator(60, 1000, 0.001);
+        long now = 1_000_000;
+        assertTrue(deduplicator.add("tx-1", now - 5_000, now));
+        assertFalse(deduplicator.mightContain("tx-2", now - 5_000, now));
+        assertTrue(deduplicator.add("tx-2", now - 5_000, now));
+        assertTrue(deduplicator.mightContain("tx-1", now - 5_000, now));
+        assertFalse(deduplicator.add("tx-1", now - 5_000, now + 2_000));
+        //Another timestamp is another transaction
+        assertTrue(deduplicator.add("tx-1", now - 4_000, now));
+    }
+
+    @Test
+    public void idsAreForgottenWithTheirSecond(){
+        TransactionIdDeduplicator deduplicator = new TransactionIdDeduplicator(60, 1000, 0.001);
+        assertTrue(deduplicator.add("tx-1", 1_000_000, 1_000_000));
+        assertTrue(deduplicator.add("tx-2", 1_030_000, 1_030_000));
+
+        //The second of tx-1 left the window and its filter moved on, the one of tx-2 is still there
+        assertFalse(deduplicator.mightContain("tx-1", 1_000_000, 1_061_000));
+        assertFalse(deduplicator.add("tx-2", 1_030_000, 1_061_000));
+        //Long after, the filter of the second tx-1 was in belongs to a later second
+        assertTrue(deduplicator.add("tx-3", 1_062_000, 1_062_000));
+        assertFalse(deduplicator.add("tx-3", 1_062_000, 1_062_500));
+
+        deduplicator.clear();
+        assertTrue(deduplicator.add("tx-3", 1_062_000, 1_062_500));
+    }
+
+    @Test
+    public void falsePositivesStayNearTheConfiguredRate(){
+        TransactionIdDeduplicator deduplicator = new TransactionIdDeduplicator(60, 10_000, 0.01);
+        long now = 1_000_000;
+        for (int i = 0; i < 10_000; i++) {
+            deduplicator.add("seen-" + i, now, now);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (deduplicator.mightContain("new-" + i, now, now)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives, lessThan(200));
+    }
+}